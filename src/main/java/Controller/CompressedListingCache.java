@@ -0,0 +1,132 @@
+package Controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/*Gzip-compressed bodies of full message listings, so a hot listing is compressed once per version instead of on every
+ * request that asks for it.
+
+    - Entries are keyed by endpoint, format and query, and remember the listing version they were built from. An entry
+      is only used while its version is still the current one, so a write makes the next request rebuild it.
+    - At most maxEntries listings are kept; the least recently used is dropped first.
+    - Compression ratio and time are counted per endpoint, together with how often a stored body was reused. They
+      cover the listings compressed here only; other responses are gzipped by Javalin and are not counted.
+ */
+
+class CompressedListingCache {
+
+    private final int maxEntries;
+    private final int gzipLevel;
+    private final LinkedHashMap <String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap <String, EndpointStats> endpointStats = new ConcurrentHashMap<>();
+
+    CompressedListingCache (int maxEntries, int gzipLevel){
+        if (maxEntries < 1 || gzipLevel < Deflater.BEST_SPEED || gzipLevel > Deflater.BEST_COMPRESSION){
+            throw new IllegalArgumentException("invalid compressed listing cache settings");
+        }
+        this.maxEntries = maxEntries;
+        this.gzipLevel = gzipLevel;
+    }
+
+    // Returns the stored body if it was built from this version of the listing, else null.
+    synchronized Entry get (String key, long version){
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version){
+            return null;
+        }
+        return entry;
+    }
+
+    // Compresses the body, stores it for this version of the listing and returns it.
+    Entry compress (String endpoint, String key, long version, String mediaType, byte[] body){
+        long start = System.nanoTime();
+        byte[] compressed = gzip(body, gzipLevel);
+        long nanos = System.nanoTime() - start;
+        endpointStats.computeIfAbsent(endpoint, name -> new EndpointStats()).compressed(body.length, compressed.length, nanos);
+
+        Entry entry = new Entry(version, mediaType, compressed);
+        synchronized (this){
+            entries.put(key, entry);
+            if (entries.size() > maxEntries){
+                Iterator <Map.Entry <String, Entry>> eldest = entries.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return entry;
+    }
+
+    void reused (String endpoint){
+        endpointStats.computeIfAbsent(endpoint, name -> new EndpointStats()).reusedCount.incrementAndGet();
+    }
+
+    Map <String, Object> getStats (){
+        Map <String, Object> stats = new LinkedHashMap<>();
+        synchronized (this){
+            stats.put("cachedListings", entries.size());
+        }
+        stats.put("gzipLevel", gzipLevel);
+        Map <String, Object> endpoints = new LinkedHashMap<>();
+        endpointStats.forEach((endpoint, counters) -> endpoints.put(endpoint, counters.toMap()));
+        stats.put("endpoints", endpoints);
+        return stats;
+    }
+
+    static byte[] gzip (byte[] body, int level){
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        // GZIPOutputStream has no level parameter, its deflater is set up by a subclass instead
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed){{ def.setLevel(level); }}){
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    static final class Entry {
+        final long version;
+        final String mediaType;
+        final byte[] body;
+
+        Entry (long version, String mediaType, byte[] body){
+            this.version = version;
+            this.mediaType = mediaType;
+            this.body = body;
+        }
+    }
+
+    private static final class EndpointStats {
+        private final AtomicLong compressedCount = new AtomicLong();
+        private final AtomicLong reusedCount = new AtomicLong();
+        private final AtomicLong rawBytes = new AtomicLong();
+        private final AtomicLong compressedBytes = new AtomicLong();
+        private final AtomicLong compressNanos = new AtomicLong();
+
+        void compressed (long raw, long compressed, long nanos){
+            compressedCount.incrementAndGet();
+            rawBytes.addAndGet(raw);
+            compressedBytes.addAndGet(compressed);
+            compressNanos.addAndGet(nanos);
+        }
+
+        Map <String, Object> toMap (){
+            long count = compressedCount.get();
+            long raw = rawBytes.get();
+            Map <String, Object> map = new LinkedHashMap<>();
+            map.put("compressedCount", count);
+            map.put("reusedCount", reusedCount.get());
+            map.put("compressionRatio", raw == 0 ? 0 : (double) compressedBytes.get() / raw);
+            map.put("averageCompressMicros", count == 0 ? 0 : compressNanos.get() / count / 1000);
+            map.put("compressMicrosPerMegabyte", raw == 0 ? 0 : compressNanos.get() / 1000 * 1_000_000 / raw);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package Controller;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import Model.Message;
+import Util.SharedJsonMapper;
+
+/*Already serialized JSON of recently returned messages, so a hot message is written to the socket as stored bytes
+ * instead of being serialized again on every request.
+
+    - Entries are keyed by message_id and remember the Message they were made from. The bytes are only reused while the
+      message handed in is equal to that one, so an updated message is never answered with its old JSON, even without
+      an explicit invalidation.
+    - At most maxSize messages are kept; the least recently used is dropped first.
+ */
+
+class MessageJsonCache {
+
+    private final int maxSize;
+    private final LinkedHashMap <Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hitCount;
+    private long missCount;
+
+    MessageJsonCache (int maxSize){
+        if (maxSize < 1){
+            throw new IllegalArgumentException("invalid message JSON cache size");
+        }
+        this.maxSize = maxSize;
+    }
+
+    byte[] toJson (Message message) throws JsonProcessingException {
+        synchronized (this){
+            Entry entry = entries.get(message.getMessage_id());
+            if (entry != null && (entry.message == message || entry.message.equals(message))){
+                hitCount++;
+                return entry.json;
+            }
+            missCount++;
+        }
+
+        // serialize outside the lock
+        byte[] json = SharedJsonMapper.get().toJsonBytes(message);
+
+        synchronized (this){
+            entries.put(message.getMessage_id(), new Entry(message, json));
+            if (entries.size() > maxSize){
+                Iterator <Map.Entry <Integer, Entry>> eldest = entries.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return json;
+    }
+
+    // A JSON array made of the cached JSON of each message.
+    byte[] toJson (List <Message> messages) throws JsonProcessingException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(64 + messages.size() * 128);
+        json.write('[');
+        for (int i = 0; i < messages.size(); i++){
+            if (i > 0){
+                json.write(',');
+            }
+            json.writeBytes(toJson(messages.get(i)));
+        }
+        json.write(']');
+        return json.toByteArray();
+    }
+
+    synchronized Map <String, Object> getStats (){
+        Map <String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hitCount", hitCount);
+        stats.put("missCount", missCount);
+        return stats;
+    }
+
+    private static final class Entry {
+        private final Message message;
+        private final byte[] json;
+
+        Entry (Message message, byte[] json){
+            this.message = message;
+            this.json = json;
+        }
+    }
+}
@@ -1,22 +1,57 @@
 package Controller;
 
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.HttpResponseException;
+import io.javalin.http.ServiceUnavailableResponse;
+import io.javalin.http.UnauthorizedResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import Model.Account;
+import Model.BatchItemResult;
 import Model.Message;
+import Model.MessagePage;
+import Model.VersionedMessage;
 import Service.MessageService;
 import Service.AccountService;
+import Service.DatabaseExecutor;
+import Service.GroupCommitStats;
+import Service.SessionStore;
+import Service.UsernameRegistry;
+import Service.VersionConflictException;
+import Util.AdaptiveConcurrencyLimiter;
+import Util.AdaptiveConcurrencyLimiter.Priority;
+import Util.ConnectionUtil;
+import Util.MediaFormat;
+import Util.SharedJsonMapper;
+import Util.VirtualThreadPool;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import javax.security.sasl.AuthenticationException;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import DAO.AccountDAO;
+import DAO.MessageCursor;
 import DAO.MessageDAO;
 
 /*
@@ -27,7 +62,46 @@ import DAO.MessageDAO;
 public class SocialMediaController {
     private final MessageService messageService;
     private AccountService accountService = null;
-    private Account authenticatedAccount  = null;      // Used to track login status
+
+    // Logged-in users, keyed by the token /login returns in the X-Session-Token header.
+    private final SessionStore sessionStore;
+    public static final String SESSION_HEADER = "X-Session-Token";
+    private static final String SESSION_ACCOUNT = "sessionAccount";
+
+    // Page size used when a client passes a cursor without a limit.
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    // Used to write streamed listings one message at a time.
+    private final ObjectMapper objectMapper = SharedJsonMapper.get().getObjectMapper();
+
+    // Set when the pre-serialized message JSON cache is enabled.
+    private final MessageJsonCache messageJsonCache;
+
+    // Responses of at least this many bytes are gzipped for clients that accept it; full listings are stored compressed.
+    private final int compressionMinSize;
+    private final int gzipLevel;
+    private final CompressedListingCache compressedListings;
+
+    // Runs each request on a virtual thread instead of Jetty's bounded platform thread pool, when the JVM has them.
+    // Database work sent to the executors below still runs on their platform threads.
+    private final boolean virtualThreads;
+    private final int maxRequestThreads;
+    private volatile ThreadPool requestThreadPool;
+
+    // Database work runs off the request threads, on separate pools for point reads, scans and writes, so one class of
+    // work can only use up its own threads and the connections they hold.
+    private final DatabaseExecutor pointReads;
+    private final DatabaseExecutor scans;
+    private final DatabaseExecutor writes;
+    private final DatabaseExecutor exports;
+    private final long streamMaxMillis;
+
+    // Caps the requests in flight, adapting the cap to observed latency, and sheds the rest with 503. Null if disabled.
+    private final AdaptiveConcurrencyLimiter admissionLimiter;
+    private static final String ADMITTED_AT = "admittedAt";
+
+    // Part of every ETag, so tags handed out before a restart, when the version counters start over, never match.
+    private final String etagEpoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
 
     public SocialMediaController () {
 
@@ -35,6 +109,77 @@ public class SocialMediaController {
         // accountService must be initialized before messageService 
         this.accountService = new AccountService(new AccountDAO());
         this.messageService = new MessageService (new MessageDAO(), this.accountService); 
+
+        // Sessions last an hour by default, e.g. -Dsessions.ttlSeconds=900 -Dsessions.maxSessions=50000
+        this.sessionStore = new SessionStore(
+            TimeUnit.SECONDS.toMillis(Long.getLong("sessions.ttlSeconds", 3600L)),
+            Integer.getInteger("sessions.maxSessions", 100000));
+
+        // Optional in-memory registry of taken usernames, e.g. -Daccounts.usernameRegistry.enabled=true
+        if (Boolean.getBoolean("accounts.usernameRegistry.enabled")){
+            try {
+                this.accountService.enableUsernameRegistry();
+            } catch (SQLException e) {
+                // registrations still work without the registry, they just check uniqueness in the database
+                e.printStackTrace();
+            }
+        }
+
+        // Optional cache of serialized message JSON, e.g. -Dmessages.jsonCache.enabled=true -Dmessages.jsonCache.maxSize=10000
+        this.messageJsonCache = Boolean.getBoolean("messages.jsonCache.enabled")
+            ? new MessageJsonCache(Integer.getInteger("messages.jsonCache.maxSize", 10000))
+            : null;
+
+        // Response compression, e.g. -Dcompression.minSizeBytes=2048 -Dcompression.gzipLevel=4 -Dcompression.listingCacheSize=64
+        this.compressionMinSize = Integer.getInteger("compression.minSizeBytes", 1024);
+        this.gzipLevel = Integer.getInteger("compression.gzipLevel", 6);
+        this.compressedListings = new CompressedListingCache(Integer.getInteger("compression.listingCacheSize", 64), gzipLevel);
+
+        // Optional virtual-thread request execution, e.g. -Dserver.virtualThreads=true, else -Dserver.maxThreads=250
+        boolean virtualThreadsRequested = Boolean.getBoolean("server.virtualThreads");
+        this.virtualThreads = virtualThreadsRequested && VirtualThreadPool.isAvailable();
+        if (virtualThreadsRequested && !virtualThreads){
+            System.err.println("server.virtualThreads is set but this JVM has no virtual threads, using platform threads");
+        }
+        this.maxRequestThreads = Integer.getInteger("server.maxThreads", 250);
+
+        // Database executors, e.g. -Ddb.executors.scans.threads=4 -Ddb.executors.scans.queueCapacity=100.
+        // The default thread counts add up to the default connection pool size of 10. Streamed exports hold their thread
+        // and connection for the whole transfer, so they get their own executor and cannot starve the scans, and are
+        // cut off after messages.stream.maxMillis.
+        this.pointReads = DatabaseExecutor.fromSystemProperties("pointReads", 5, 1000);
+        this.scans = DatabaseExecutor.fromSystemProperties("scans", 2, 100);
+        this.writes = DatabaseExecutor.fromSystemProperties("writes", 2, 1000);
+        this.exports = DatabaseExecutor.fromSystemProperties("exports", 1, 4);
+        this.streamMaxMillis = Long.getLong("messages.stream.maxMillis", 60_000L);
+
+        // Admission control, on unless -Dadmission.enabled=false, e.g. -Dadmission.targetLatencyMillis=100
+        this.admissionLimiter = Boolean.parseBoolean(System.getProperty("admission.enabled", "true"))
+            ? new AdaptiveConcurrencyLimiter(
+                Integer.getInteger("admission.initialLimit", 100),
+                Integer.getInteger("admission.minLimit", 10),
+                Integer.getInteger("admission.maxLimit", 1000),
+                Long.getLong("admission.targetLatencyMillis", 250L),
+                Double.parseDouble(System.getProperty("admission.backoffRatio", "0.9")),
+                Double.parseDouble(System.getProperty("admission.readShare", "0.8")))
+            : null;
+
+        // Optional soft delete with background purging, e.g. -Dmessages.softDelete.enabled=true
+        if (Boolean.getBoolean("messages.softDelete.enabled")){
+            this.messageService.enableSoftDelete(
+                Long.getLong("messages.softDelete.compactIntervalMillis", 5000L),
+                Integer.getInteger("messages.softDelete.batchSize", 100),
+                Long.getLong("messages.softDelete.batchPauseMillis", 50L),
+                Integer.getInteger("messages.softDelete.maxBatchesPerRun", 50));
+        }
+
+        // Optional group commit for new messages, e.g. -Dmessages.groupCommit.enabled=true
+        if (Boolean.getBoolean("messages.groupCommit.enabled")){
+            this.messageService.enableGroupCommit(
+                Integer.getInteger("messages.groupCommit.maxBatchSize", 64),
+                Long.getLong("messages.groupCommit.maxWaitMicros", 500L),
+                Integer.getInteger("messages.groupCommit.queueCapacity", 10000));
+        }
        
     }
     
@@ -44,20 +189,90 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        Javalin app = Javalin.create(config -> {
+            // every handler reads and writes JSON through the one shared, preconfigured mapper
+            config.jsonMapper(SharedJsonMapper.get());
+
+            // gzip responses for clients that accept it, except small ones where it costs more than it saves.
+            // Brotli would need a native library, so only gzip is offered.
+            CompressionStrategy compression = new CompressionStrategy(null, new Gzip(gzipLevel));
+            compression.setMinSizeForCompression(compressionMinSize);
+            config.compression.custom(compression);
+
+            // our own server, so the request thread pool is chosen here and not by what the JVM happens to support
+            config.jetty.server(() -> new Server(createRequestThreadPool()));
+        });
         
+        app.before(this::admissionHandler);                                               //sheds requests over the concurrency limit
+        app.after(this::admissionReleaseHandler);                                         //frees the slot and feeds the limit
+        app.before("messages*", this::sessionHandler);                                   //resolves the session token, if one is sent
+
         app.post("register", this::userRegistrationHandler);                              //user registration endpoint 
         app.post("login", this::userLoginHandler);                                        //user Login endpoint
-        app.post("messages", this::createMessageHandler);                                 //create new message endpoint 
-        app.get("messages", this::getAllMessagesHandler);                                 //get all messages endpoint 
-        app.get("messages/{message_id}", this::getSingleMessageHandler);                  //retrieve single message endpoint
-        app.delete("messages/{message_id}", this::deleteSingleMessageHandler);            //Delete message by id endpoint 
-        app.patch("messages/{message_id}", this::updateMessageHandler);                   //update message content by id endpoint 
-        app.get("accounts/{account_id}/messages", this::getAllMessagesByAccountHandler);  //retrive all messages by user account id endpoint 
+        app.post("logout", this::userLogoutHandler);                                      //ends the session of the sent token
+        app.post("messages", this::createMessageHandler);                                             //create new message endpoint, runs on writes itself
+        app.post("messages/batch", on(writes, this::createMessagesBatchHandler));                     //create many messages endpoint
+        app.post("messages/lookup", on(pointReads, this::lookupMessagesHandler));                     //get many messages by id endpoint
+        app.get("messages", on(this::executorForMessagesRequest, this::getAllMessagesHandler));       //get all messages, or some by id, endpoint 
+        app.get("messages/{message_id}", on(pointReads, this::getSingleMessageHandler));              //retrieve single message endpoint
+        app.delete("messages/{message_id}", on(writes, this::deleteSingleMessageHandler));            //Delete message by id endpoint 
+        app.patch("messages/{message_id}", on(writes, this::updateMessageHandler));                   //update message content by id endpoint 
+        app.get("accounts/{account_id}/messages", on(scans, this::getAllMessagesByAccountHandler));   //retrive all messages by user account id endpoint 
+        app.get("metrics", this::metricsHandler);                                         //connection pool, cache and queue statistics endpoint
+
+        // stop the background threads owned by the services together with the server
+        app.events(event -> event.serverStopped(() -> {
+            messageService.shutdown();
+            accountService.shutdown();
+            pointReads.shutdown();
+            scans.shutdown();
+            writes.shutdown();
+            exports.shutdown();
+        }));
 
         return app;
     }
 
+    // A new pool per server, since stopping the server stops its pool.
+    private ThreadPool createRequestThreadPool (){
+        if (virtualThreads){
+            requestThreadPool = new VirtualThreadPool();
+        }else{
+            QueuedThreadPool platformThreads = new QueuedThreadPool(maxRequestThreads, Math.min(8, maxRequestThreads), 60_000);
+            platformThreads.setName("JettyServerThreadPool");
+            requestThreadPool = platformThreads;
+        }
+        return requestThreadPool;
+    }
+
+    /*
+     * Runs a handler on a database executor instead of the request thread. The request is suspended until the handler
+     * has written its response; a full executor queue is answered with 503.
+     */
+    private Handler on (DatabaseExecutor executor, Handler handler){
+        return on(context -> executor, handler);
+    }
+
+    // Same as above, for routes whose requests fall into different classes of work.
+    private Handler on (Function <Context, DatabaseExecutor> executorFor, Handler handler){
+        return context -> context.future(() -> executorFor.apply(context).submit(() -> {
+            handler.handle(context);
+            return null;
+        }).exceptionally(error -> {
+            respondToAsyncFailure(context, error);
+            return null;
+        }));
+    }
+
+    // GET /messages?ids=... looks up a few rows by primary key, ?stream=true exports the table, and any other
+    // GET /messages reads the whole listing or a page of it.
+    private DatabaseExecutor executorForMessagesRequest (Context context){
+        if (context.queryParam("ids") != null){
+            return pointReads;
+        }
+        return "true".equals(context.queryParam("stream")) ? exports : scans;
+    }
+
     /**
      * This is an example handler for an example endpoint.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
@@ -77,21 +292,22 @@ public class SocialMediaController {
             // Parse the JSON body to an Account object
             Account account = context.bodyAsClass(Account.class);
 
-            Account newAccount = accountService.createNewAccount(account);
-
-            if (newAccount != null){
-                context.status(200).json(newAccount);
-            }else {
-                context.status(400).result("");
-            }
+            // The password is hashed off the request thread and the account inserted on the writes pool, and the
+            // response is written when the future completes
+            context.future(() -> accountService.createNewAccount(account, writes).handle((newAccount, error) -> {
+                if (error != null){
+                    respondToAsyncFailure(context, error);
+                }else if (newAccount != null){
+                    context.status(200).json(newAccount);
+                }else {
+                    context.status(400).result("");
+                }
+                return null;
+            }));
 
-            
         } catch (IllegalArgumentException e) {
             // Handle validation errors and respond with a 400 status
             context.status(400).result(e.getMessage());
-        }catch (SQLException e){
-            //Handles database error and responds with a 500 status 
-            context.status(500).result(e.getMessage());
         }
      
     }
@@ -116,20 +332,123 @@ public class SocialMediaController {
                     return;
             }
 
-            Account authenticatedAccount  = accountService.authenticateUser(account);
+            // The account is found by username on the point read pool, and the password is verified on the hashing pool
+            CompletableFuture <Account> authentication = pointReads
+                .submit(() -> accountService.authenticateUser(account))
+                .thenCompose(verification -> verification);
 
-            if (authenticatedAccount  != null){
-                this.authenticatedAccount  = authenticatedAccount ;       //Set the logged-in account as authenticated account.
-                context.status(200).json(authenticatedAccount );
-            }else{
-                context.status(401).result("");
-            }
+            context.future(() -> authentication.handle((authenticatedAccount, error) -> {
+                if (error != null){
+                    respondToAsyncFailure(context, error);
+                }else if (authenticatedAccount  != null){
+                    // Start a session for the account and hand its token back in a header, the body stays the account
+                    context.header(SESSION_HEADER, sessionStore.create(authenticatedAccount));
+                    context.status(200).json(authenticatedAccount );
+                }else{
+                    context.status(401).result("");
+                }
+                return null;
+            }));
             
         } catch (IllegalArgumentException e) {
             context.status(400).result(e.getMessage());
-        }catch (SQLException e){
-            context.status(500).result(e.getMessage());
-        }  
+        }
+    }
+
+/**************************************************User logout handler*******************************************/
+
+/* handles the post request to /logout
+    1.Reads the session token from the X-Session-Token header, a request without one is answered with 400.
+    2.Ends the session, so the token is refused with 401 from now on.
+    3.Returns 204 whether or not the session still existed, so logging out twice is harmless.
+ */
+
+    private void userLogoutHandler (Context context){
+        String token = context.header(SESSION_HEADER);
+        if (token == null || token.isBlank()){
+            context.status(400).result(SESSION_HEADER + " header is required");
+            return;
+        }
+        sessionStore.invalidate(token);
+        context.status(204);
+    }
+
+    /*
+     * Writes the response for a future that failed. A saturated password hashing or database pool is reported as 503 with a
+     * Retry-After header, so clients back off instead of retrying at once; anything else is a 500.
+     */
+    private void respondToAsyncFailure (Context context, Throwable error){
+        Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException){
+            context.header("Retry-After", "1");
+            context.status(503).result("The server is busy, try again shortly");
+        }else if (cause instanceof HttpResponseException){
+            // thrown on purpose by a handler, e.g. a body Javalin could not parse
+            context.status(((HttpResponseException) cause).getStatus()).result(cause.getMessage());
+        }else {
+            context.status(500).result(String.valueOf(cause.getMessage()));
+        }
+    }
+
+/**************************************************Admission handlers*******************************************/
+
+/* runs before every request except /metrics, which must keep answering under overload
+    1.Records how long the request waited for a server thread.
+    2.Reads (GET, and POST /messages/lookup) may only use part of the in-flight limit, writes all of it, so reads are shed first.
+    3.A request over the limit is answered with 503 and Retry-After at once instead of being queued.
+ */
+
+    private void admissionHandler (Context context){
+        if (admissionLimiter == null || "/metrics".equals(context.path())){
+            return;
+        }
+        long queueingMillis = Math.max(0, System.currentTimeMillis() - Request.getBaseRequest(context.req()).getTimeStamp());
+        long queueingNanos = TimeUnit.MILLISECONDS.toNanos(queueingMillis);
+        admissionLimiter.recordQueueingDelay(queueingNanos);
+
+        boolean read = context.method() == HandlerType.GET || "/messages/lookup".equals(context.path());
+        Priority priority = read ? Priority.LOW : Priority.HIGH;
+        if (!admissionLimiter.tryAcquire(priority)){
+            context.header("Retry-After", "1");
+            throw new ServiceUnavailableResponse("The server is busy, try again shortly");
+        }
+        // the limit is adjusted by the whole time since arrival, so requests stuck in Jetty's queue count as slow
+        context.attribute(ADMITTED_AT, System.nanoTime() - queueingNanos);
+    }
+
+    // Runs after every request, once any async handler has completed.
+    private void admissionReleaseHandler (Context context){
+        Long admittedAt = context.attribute(ADMITTED_AT);
+        if (admittedAt == null){
+            return;
+        }
+        // a 503 here came from a full executor or hashing queue behind the limiter
+        admissionLimiter.release(System.nanoTime() - admittedAt, context.statusCode() == 503);
+    }
+
+/**************************************************Session handler*******************************************/
+
+/* runs before every /messages request
+    1.Requests without an X-Session-Token header go through unchanged.
+    2.A token that is unknown or expired is answered with 401.
+    3.Otherwise the logged-in account is attached to the request for the handlers that need it.
+ */
+
+    private void sessionHandler (Context context){
+        String token = context.header(SESSION_HEADER);
+        if (token == null){
+            return;
+        }
+        Account account = sessionStore.lookup(token);
+        if (account == null){
+            throw new UnauthorizedResponse("Session expired or unknown, please log in again");
+        }
+        context.attribute(SESSION_ACCOUNT, account);
+    }
+
+    // True when the request carries a session for a different account than the one the message is posted by.
+    private static boolean postsAsSomeoneElse (Account sessionAccount, Message message){
+        return sessionAccount != null && message != null && sessionAccount.getAccount_id() != message.getPosted_by();
     }
 
 /********************************************Create a new messages handler*****************************************/
@@ -138,9 +457,11 @@ public class SocialMediaController {
      * 1. Parses the JSON request body to create a Message object.
      * 2. Validates the message content length and checks for blank messages.
      * 3. Calls MessageService to save the new message if valid, else returns a 400 status.
+     * The account check and the insert run on the writes executor. In group commit mode the request then waits for the
+     * group to commit without holding a writes thread, so many creates can share one group.
      */
 
-private void createMessageHandler (Context context) throws SQLException{
+private void createMessageHandler (Context context){
     try {
 
           // Parse the message and account from the request body
@@ -152,23 +473,131 @@ private void createMessageHandler (Context context) throws SQLException{
             return;
         }
 
-        Message createdMessage = messageService.createNewMessage(message, authenticatedAccount);
+        // A logged-in user may only post as themselves
+        Account sessionAccount = context.attribute(SESSION_ACCOUNT);
+        if (postsAsSomeoneElse(sessionAccount, message)){
+            context.status(401).result("");
+            return;
+        }
 
-        if (createdMessage != null){
-            context.status(200).json(createdMessage);
-        }else{
-            context.status(400).result("Client error");
+        CompletableFuture <Message> creation = writes
+            .submit(() -> messageService.submitNewMessage(message, sessionAccount))
+            .thenCompose(submitted -> submitted);
+
+        context.future(() -> creation.handle((createdMessage, error) -> {
+            Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+            if (cause instanceof AuthenticationException){
+                context.status(400).result(cause.getMessage());
+            }else if (cause instanceof SQLException){
+                context.status(500).result(cause.getMessage());
+            }else if (error != null){
+                respondToAsyncFailure(context, error);
+            }else if (createdMessage != null){
+                context.status(200).json(createdMessage);
+            }else{
+                context.status(400).result("Client error");
+            }
+            return null;
+        }));
+
+    } catch (IllegalArgumentException e) {
+        context.status(400).result(e.getMessage());
+    }
+}
+
+/********************************************Create messages in a batch handler*****************************************/
+/*
+     * Handles POST request to /messages/batch endpoint.
+     * 1. Parses the request body as an array of Message objects, in JSON or in the Smile or CBOR format named by
+     *    Content-Type. The results are written in the format asked for with Accept, JSON by default.
+     * 2. Calls MessageService to validate every message and insert the valid ones in a single transaction.
+     * 3. Returns one result per message, in request order, with status 200 and the created message or status 400 and
+     *    the reason it was rejected. The response itself is 200 as long as the batch could be processed.
+     */
+
+private void createMessagesBatchHandler (Context context){
+    try {
+        Message[] messages = readBody(context, Message[].class);
+        if (messages == null){
+            context.status(400).result("Request body must be an array of messages.");
+            return;
         }
-        
+
+        // A logged-in user may only post as themselves
+        Account sessionAccount = context.attribute(SESSION_ACCOUNT);
+        for (Message message : messages){
+            if (postsAsSomeoneElse(sessionAccount, message)){
+                context.status(401).result("");
+                return;
+            }
+        }
+
+        List <BatchItemResult> results = messageService.createNewMessages(Arrays.asList(messages));
+        context.status(200);
+        respond(context, results);
+
     } catch (IllegalArgumentException e) {
+        // body is not an array of messages or the batch is too large
         context.status(400).result(e.getMessage());
-    }catch (SQLException e){
+    }catch (SQLException | JsonProcessingException e){
         context.status(500).result(e.getMessage());
-    }catch(AuthenticationException e){
+    }
+}
+
+/********************************************Get many messages by id handler*********************************************/
+
+/* Handles POST request to /messages/lookup, and GET /messages?ids=1,2,3 for shorter lists.
+    1.The body is a JSON array of message ids, e.g. [3, 1, 2], at most MessageService.MAX_MULTI_GET_SIZE of them.
+    2.Messages in the message cache are served from it, and all other ids are read with a single query.
+    3.Returns the messages that exist, in the order their ids were given, with missing and repeated ids left out.
+    4.With ?expand=author, every message also carries the username of its poster.
+ */
+
+private void lookupMessagesHandler (Context context){
+    try {
+        Integer[] ids = readBody(context, Integer[].class);
+        if (ids == null || Arrays.asList(ids).contains(null)){
+            context.status(400).result("Request body must be an array of message ids.");
+            return;
+        }
+        respondWithMessages(context, Arrays.asList(ids), expandsAuthor(context));
+
+    } catch (IllegalArgumentException e) {
+        // body is not an array of ids or there are too many of them
         context.status(400).result(e.getMessage());
+    }catch (SQLException | JsonProcessingException e){
+        context.status(500).result(e.getMessage());
     }
 }
 
+    private void respondWithMessages (Context context, List <Integer> ids, boolean expandAuthor) throws SQLException, JsonProcessingException {
+        List <Message> messages = messageService.getMessagesByIds(ids);
+        if (expandAuthor){
+            context.status(200);
+            respond(context, messageService.withAuthors(messages));
+        }else if (MediaFormat.fromAccept(context.header("Accept")) == MediaFormat.JSON && messageJsonCache != null){
+            context.status(200).contentType("application/json").result(messageJsonCache.toJson(messages));
+        }else{
+            context.status(200);
+            respond(context, messages);
+        }
+    }
+
+    // Parses the ids query parameter, a comma separated list of message ids.
+    private static List <Integer> parseIds (String ids){
+        List <Integer> messageIds = new ArrayList<>();
+        for (String id : ids.split(",")){
+            if (!id.isBlank()){
+                try {
+                    messageIds.add(Integer.parseInt(id.trim()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("ids must be a comma separated list of message ids");
+                }
+            }
+        }
+        return messageIds;
+    }
+
 /********************************************Get all messages handler*********************************************/
 
     private void getAllMessagesHandler (Context context) throws SQLException{
@@ -176,16 +605,96 @@ private void createMessageHandler (Context context) throws SQLException{
         /*
         * Handles GET request to /messages endpoint.
         * Retrieves all messages from the MessageService and returns them in JSON format.
+        * If a limit or cursor query parameter is given, returns one page of messages and a cursor for the next page
+        * instead, e.g. GET /messages?limit=50 followed by GET /messages?limit=50&cursor={next_cursor}.
+        * With stream=true, streams every message straight from the database to the client instead of building the
+        * whole list in memory first.
+        * With ids, e.g. GET /messages?ids=3,1,2, returns just those messages, see lookupMessagesHandler.
+        * With expand=author, every message also carries posted_by_username, the username of its poster, so clients
+        * need no extra request per author. Not available together with stream=true.
+        * Listings and pages are written in Smile or CBOR instead of JSON when the Accept header asks for
+        * application/x-jackson-smile or application/cbor. Streaming is always JSON.
         */
 
         try {
-            List <Message> messages  = messageService.getAllMessages();
-            context.status(200).json(messages);
+            // answered from the version counter alone when the client already has the current listing
+            if (notModified(context, messageService.getMessagesVersion())){
+                return;
+            }
+            boolean expandAuthor = expandsAuthor(context);
+            String ids = context.queryParam("ids");
+            if (ids != null){
+                respondWithMessages(context, parseIds(ids), expandAuthor);
+                return;
+            }
+            if ("true".equals(context.queryParam("stream"))){
+                if (expandAuthor){
+                    throw new IllegalArgumentException("expand cannot be combined with stream");
+                }
+                streamAllMessages(context);
+                return;
+            }
+            if (isPaginated(context)){
+                MessagePage page = messageService.getMessagesPage(context.queryParam("cursor"), pageLimit(context));
+                context.status(200);
+                respond(context, expandAuthor ? messageService.withAuthors(page) : page);
+                return;
+            }
+            MediaFormat format = MediaFormat.fromAccept(context.header("Accept"));
+            respondListing(context, "GET /messages", "messages", messageService.getMessagesVersion(),
+                () -> format.write(expandAuthor ? messageService.getAllMessagesWithAuthors() : messageService.getAllMessages()));
+        } catch (IllegalArgumentException e) {
+            // invalid limit, cursor or expand
+            dropEtag(context);
+            context.status(400).result(e.getMessage());
         } catch (Exception e) {
+            dropEtag(context);
             context.status(500).result("failed to retrieve messages due to a server error.");
         }
     }
 
+    /*
+     * Writes the JSON array of all messages row by row as they are read from the database, so memory use does not grow
+     * with the size of the table. If the client disconnects, writing fails and the query is cancelled instead of being
+     * read to the end. A stream still running after streamMaxMillis, e.g. because the client reads slowly, is cancelled
+     * and its connection aborted, so the client sees a failed transfer rather than a short but well-formed array.
+     */
+    private void streamAllMessages (Context context) throws SQLException {
+
+        context.status(200).contentType("application/json");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(streamMaxMillis);
+
+        boolean expired = false;
+        try (MessageCursor cursor = messageService.openMessageCursor()) {
+            try {
+                JsonGenerator generator = objectMapper.createGenerator(context.outputStream());
+                generator.writeStartArray();
+                Message message;
+                while ((message = cursor.next()) != null){
+                    if (System.nanoTime() - deadline > 0){
+                        expired = true;
+                        cursor.cancel();
+                        break;
+                    }
+                    generator.writeObject(message);
+                }
+                if (!expired){
+                    generator.writeEndArray();
+                    generator.flush();
+                }
+            } catch (IOException e) {
+                // the client has gone away, stop the query instead of reading rows nobody will receive
+                cursor.cancel();
+            }
+        }
+
+        // aborted only once the cursor has given its connection back
+        if (expired){
+            Request.getBaseRequest(context.req()).getHttpChannel()
+                .abort(new TimeoutException("stream exceeded " + streamMaxMillis + " ms"));
+        }
+    }
+
 //********************************************Get a singler message handler*******************************************/
 
     private void getSingleMessageHandler (Context context){
@@ -199,16 +708,24 @@ private void createMessageHandler (Context context) throws SQLException{
         try {
             // Retrieve message ID from the path parameter
             int messageId =  Integer.parseInt(context.pathParam("message_id"));
-            Message message = messageService.getMessageById(messageId);
+            VersionedMessage versionedMessage = messageService.getVersionedMessageById(messageId);
+            Message message = versionedMessage == null ? null : versionedMessage.getMessage();
 
-            if (message != null){
+            // the row version, for clients that want to make a later PATCH conditional with If-Match
+            if (versionedMessage != null){
+                context.header("ETag", versionTag(versionedMessage.getVersion()));
+            }
+
+            if (message != null && messageJsonCache != null){
+                context.status(200).contentType("application/json").result(messageJsonCache.toJson(message));
+            }else if (message != null){
                 context.status(200).json(message);
             }else{
                 context.status(200).result("");
             }
         } catch (NumberFormatException e) {
             context.status(400).result("Invalid message ID format"); 
-        } catch (SQLException e){
+        } catch (SQLException | JsonProcessingException e){
             context.status(500).result("Internal server error");
         }
     }
@@ -252,10 +769,11 @@ private void createMessageHandler (Context context) throws SQLException{
      * Handles PATCH request to /messages/{message_id} endpoint.
      * Updates a message's content by its ID and returns the updated message in JSON format.
      * Validates message content length and checks for empty content.
+     * With an If-Match header holding the ETag of a previous read, the update only applies if nobody has changed the
+     * message since; otherwise it is answered with 409 and the current message and ETag.
      */
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            Message message = mapper.readValue(context.body(), Message.class);
+            Message message = SharedJsonMapper.get().readerFor(Message.class).readValue(context.body());
             int messageId = Integer.parseInt(context.pathParam("message_id"));
 
             if (message.getMessage_text() == null || message.getMessage_text().isEmpty()) {
@@ -263,20 +781,29 @@ private void createMessageHandler (Context context) throws SQLException{
                 return;
             }
 
-            Message updatedMessage = messageService.updateMessageContent(messageId, message);
+            Long expectedVersion = parseVersionTag(context.header("If-Match"));
+            VersionedMessage updatedMessage = messageService.updateMessageContent(messageId, message, expectedVersion);
 
-            if (updatedMessage == null || updatedMessage.getMessage_text().length() >= 255) {
+            if (updatedMessage == null) {
                 context.status(400);
             } else {
-                context.json(mapper.writeValueAsString(updatedMessage));
+                context.header("ETag", versionTag(updatedMessage.getVersion()));
+                context.json(updatedMessage.getMessage());
             }
-            
+
+    } catch (VersionConflictException e) {
+        VersionedMessage currentMessage = e.getCurrentMessage();
+        context.header("ETag", versionTag(currentMessage.getVersion()));
+        context.status(409).json(currentMessage.getMessage());
     } catch (JsonMappingException e) {
         // JSON structure was invalid or did not map to Message class
         context.status(400).result("Invalid JSON structure for message content.");
     } catch (NumberFormatException e) {
         // Provided message ID is not a valid integer
         context.status(400).result("Invalid message ID format.");
+    } catch (IllegalArgumentException e) {
+        // unreadable If-Match header
+        context.status(400).result(e.getMessage());
     }  catch (JsonProcessingException e) {
         context.status(400).result("Invalid JSON format. Please check the request body.");
     }catch (SQLException e) {
@@ -290,22 +817,283 @@ private void createMessageHandler (Context context) throws SQLException{
     /*
      * Handles GET request to /accounts/{account_id}/messages endpoint.
      * Retrieves all messages associated with a given account ID and returns them in JSON format.
+     * Supports the same limit and cursor query parameters as GET /messages.
+     * Like GET /messages, answers in Smile or CBOR instead of JSON when the Accept header asks for it, and adds
+     * posted_by_username to every message with expand=author.
      */
 
         try {
             int accountId = Integer.parseInt(context.pathParam("account_id"));
 
-            List <Message> messages  =  messageService.getAllMessagesUnderGivenAccount(accountId);
+            // answered from the account's version counter alone when the client already has the current listing
+            if (notModified(context, messageService.getAccountMessagesVersion(accountId))){
+                return;
+            }
+
+            boolean expandAuthor = expandsAuthor(context);
+            if (isPaginated(context)){
+                MessagePage page = messageService.getMessagesPageUnderGivenAccount(accountId, context.queryParam("cursor"), pageLimit(context));
+                context.status(200);
+                respond(context, expandAuthor ? messageService.withAuthors(page) : page);
+                return;
+            }
 
-                context.status(200).json(messages);
+            MediaFormat format = MediaFormat.fromAccept(context.header("Accept"));
+            respondListing(context, "GET /accounts/{account_id}/messages", "accounts/" + accountId + "/messages",
+                messageService.getAccountMessagesVersion(accountId), () -> {
+                    List <Message> messages = messageService.getAllMessagesUnderGivenAccount(accountId);
+                    if (expandAuthor){
+                        return format.write(messageService.withAuthors(messages));
+                    }
+                    return format == MediaFormat.JSON && messageJsonCache != null
+                        ? messageJsonCache.toJson(messages)
+                        : format.write(messages);
+                });
             
+        } catch (IllegalArgumentException e) {
+            // invalid account id, limit, cursor or expand
+            dropEtag(context);
+            context.status(400).result(e.getMessage());
         } catch (SQLException e) {
             e.printStackTrace();
+            dropEtag(context);
             context.status(500).result ("Failed to retrieve messages due to a database error.");
                 
         }catch (Exception e) {
             e.printStackTrace();
+            dropEtag(context);
             context.status(500).result ("Failed to retrieve messages due to a server error.");
         }
     }
-}
\ No newline at end of file
+/***********************************Metrics handler ************************************************/
+
+    /*
+     * Handles GET request to /metrics endpoint.
+     * Returns the current statistics of the connection pool and of the optional service features that are enabled.
+     */
+    private void metricsHandler (Context context){
+
+        Map <String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("connectionPool", ConnectionUtil.getPoolStats());
+        metrics.put("requestThreads", getRequestThreadStats());
+        if (admissionLimiter != null){
+            metrics.put("admission", admissionLimiter.getStats());
+        }
+        Map <String, Object> databaseExecutors = new LinkedHashMap<>();
+        for (DatabaseExecutor executor : List.of(pointReads, scans, writes, exports)){
+            databaseExecutors.put(executor.getName(), executor.getStats());
+        }
+        metrics.put("databaseExecutors", databaseExecutors);
+        metrics.put("passwordHasher", accountService.getPasswordHasherStats());
+        metrics.put("accountIds", accountService.getAccountIdStats());
+        metrics.put("usernameCache", accountService.getUsernameCacheStats());
+        metrics.put("sessions", sessionStore.getStats());
+        metrics.put("messageCache", messageService.getMessageCacheStats());
+        metrics.put("timelineCache", messageService.getTimelineCacheStats());
+        metrics.put("sharedLoads", messageService.getSharedLoadStats());
+
+        UsernameRegistry usernameRegistry = accountService.getUsernameRegistry();
+        if (usernameRegistry != null){
+            Map <String, Object> registryStats = new LinkedHashMap<>();
+            registryStats.put("size", usernameRegistry.size());
+            registryStats.put("rejectedCount", usernameRegistry.getRejectedCount());
+            metrics.put("usernameRegistry", registryStats);
+        }
+
+        if (messageJsonCache != null){
+            metrics.put("messageJsonCache", messageJsonCache.getStats());
+        }
+        // only listings compressed through the cache are counted, not responses Javalin gzips on the fly
+        metrics.put("compressedListingCache", compressedListings.getStats());
+
+        Map <String, Object> compactorStats = messageService.getTombstoneCompactorStats();
+        if (compactorStats != null){
+            metrics.put("tombstoneCompactor", compactorStats);
+        }
+
+        GroupCommitStats groupCommitStats = messageService.getGroupCommitStats();
+        if (groupCommitStats != null){
+            metrics.put("groupCommit", groupCommitStats);
+        }
+        context.status(200).json(metrics);
+    }
+
+    private Map <String, Object> getRequestThreadStats (){
+        ThreadPool pool = requestThreadPool;
+        if (pool instanceof VirtualThreadPool){
+            return ((VirtualThreadPool) pool).getStats();
+        }
+        QueuedThreadPool platformThreads = (QueuedThreadPool) pool;
+        Map <String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", "platform");
+        stats.put("maxThreads", platformThreads.getMaxThreads());
+        stats.put("threads", platformThreads.getThreads());
+        stats.put("busyThreads", platformThreads.getBusyThreads());
+        stats.put("queuedRequests", platformThreads.getQueueSize());
+        return stats;
+    }
+
+/***********************************Content negotiation helpers ************************************************/
+
+    // Writes the body in the format the Accept header asks for, JSON by default.
+    private static void respond (Context context, Object body) throws JsonProcessingException {
+        MediaFormat format = MediaFormat.fromAccept(context.header("Accept"));
+        if (format == MediaFormat.JSON){
+            context.json(body);
+        }else{
+            context.contentType(format.getMediaType()).result(format.write(body));
+        }
+    }
+
+    // Reads the body in the format named by Content-Type, JSON by default.
+    private static <T> T readBody (Context context, Class <T> type){
+        MediaFormat format = MediaFormat.fromContentType(context.contentType());
+        if (format == MediaFormat.JSON){
+            return context.bodyAsClass(type);
+        }
+        try {
+            return format.read(context.bodyAsBytes(), type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Request body is not valid " + format.getMediaType());
+        }
+    }
+
+/***********************************Compressed listing helpers ************************************************/
+
+    private interface ListingEncoder {
+        byte[] encode () throws SQLException, JsonProcessingException;
+    }
+
+    /*
+     * Writes a full listing in the negotiated format. For clients that accept gzip, a listing at least as large as the
+     * compression threshold is compressed once and stored with the listing version it was built from, and later
+     * requests for the same version are answered with the stored bytes without loading, serializing or compressing.
+     */
+    private void respondListing (Context context, String endpoint, String key, long version, ListingEncoder encoder)
+            throws SQLException, JsonProcessingException {
+
+        MediaFormat format = MediaFormat.fromAccept(context.header("Accept"));
+        String acceptEncoding = context.header("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        String cacheKey = key + "|" + format + "|" + context.queryString();
+
+        if (gzip){
+            CompressedListingCache.Entry stored = compressedListings.get(cacheKey, version);
+            if (stored != null){
+                compressedListings.reused(endpoint);
+                writeCompressed(context, stored);
+                return;
+            }
+        }
+
+        byte[] body = encoder.encode();
+        if (gzip && body.length >= compressionMinSize){
+            writeCompressed(context, compressedListings.compress(endpoint, cacheKey, version, format.getMediaType(), body));
+            return;
+        }
+        context.status(200).contentType(format.getMediaType()).result(body);
+    }
+
+    // Writes already gzipped bytes straight to the response, past Javalin's own compression.
+    private static void writeCompressed (Context context, CompressedListingCache.Entry entry){
+        context.status(200).contentType(entry.mediaType).header("Content-Encoding", "gzip");
+        context.res().setContentLength(entry.body.length);
+        try {
+            context.res().getOutputStream().write(entry.body);
+        } catch (IOException e) {
+            // the client has gone away, there is nobody left to answer
+        }
+    }
+
+/***********************************Message version tags ************************************************/
+
+    // A message's row version as a strong ETag.
+    private static String versionTag (long version){
+        return "\"" + version + "\"";
+    }
+
+    // The version an If-Match header asks for, or null when there is none or it is "*", which any existing message matches.
+    private static Long parseVersionTag (String ifMatch){
+        if (ifMatch == null || ifMatch.trim().equals("*")){
+            return null;
+        }
+        String tag = ifMatch.trim();
+        try {
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")){
+                return Long.parseLong(tag.substring(1, tag.length() - 1));
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("If-Match must be a single message ETag");
+    }
+
+/***********************************Conditional GET helpers ************************************************/
+
+    /*
+     * Tags the response with an ETag built from the listing version and the query string, and answers 304 with no body
+     * if the client's If-None-Match already has that tag. The tag is computed before the listing is loaded, so nothing
+     * is queried or serialized for a 304.
+     */
+    private boolean notModified (Context context, long version){
+        String query = context.queryString();
+        String etag = "W/\"" + etagEpoch + "-" + version + (query == null ? "" : "-" + Integer.toHexString(query.hashCode()))
+            + "-" + MediaFormat.fromAccept(context.header("Accept")).ordinal() + "\"";
+        context.header("ETag", etag);
+        // the same listing has a different body, and tag, per format, and may be gzipped
+        context.header("Vary", "Accept, Accept-Encoding");
+
+        String ifNoneMatch = context.header("If-None-Match");
+        if (ifNoneMatch != null && etagMatches(ifNoneMatch, etag)){
+            context.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    // If-None-Match may list several tags or be *. ETags are compared weakly, i.e. ignoring the W/ prefix.
+    private static boolean etagMatches (String ifNoneMatch, String etag){
+        String opaqueTag = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")){
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")){
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(opaqueTag)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Error responses must not carry the listing's ETag, or a client could later get a 304 for an error.
+    private static void dropEtag (Context context){
+        context.res().setHeader("ETag", null);
+    }
+
+/***********************************Pagination helpers ************************************************/
+
+    // Listings stay unpaginated unless the client asks for a page, so existing clients keep getting a plain list.
+    private static boolean isPaginated (Context context){
+        return context.queryParam("limit") != null || context.queryParam("cursor") != null;
+    }
+
+    private static int pageLimit (Context context){
+        String limit = context.queryParam("limit");
+        return limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+    }
+
+/***********************************Expansion helpers ************************************************/
+
+    // True for expand=author. Any other expansion is refused, rather than silently answered without it.
+    private static boolean expandsAuthor (Context context){
+        String expand = context.queryParam("expand");
+        if (expand == null){
+            return false;
+        }
+        if (expand.equals("author")){
+            return true;
+        }
+        throw new IllegalArgumentException("expand only supports author");
+    }
+}
@@ -7,62 +7,200 @@ import Model.Account;
 
 import Util.ConnectionUtil;
 
-/*In this Account DAO class I will write two method 
- * 1. retrive all the users accounts from the database and put on the list on the memory.
- *  - The name of our method would be getAllAccounts.
- *  - we can use the the list of all users accounts to authenticate the user when the user login to their account 
- *    just by check in the user credentials whether available in the list or not.
- * 
- * 2. create a new account for a user who submit a new account credentials for signup/registration so that we will insert a new user data 
+/*In this Account DAO class I will write these methods
+ * 1. create a new account for a user who submit a new account credentials for signup/registration so that we will insert a new user data 
  *    in to our database. 
- *    - The name of the second method would be CreateNewAccount.
+ *    - The name of the method would be CreateNewAccount.
  *    - This account takes an Account object form our Model package to get username and password from the Account class.
  *    - To create an acount only username and password will be required.
+ *    - The username column is unique, so instead of looking for an existing account first, the insert itself is the
+ *      uniqueness check: a unique constraint violation means the username is taken and the method returns null.
+ *
+ * 2. find a single account by its username.
+ *    - The name of the method is findByUsername. It reads one row through the unique index on username instead of
+ *      loading every account.
+ *
+ * 3. list every username, used to warm the in-memory username registry at startup.
+ *
+ * 4. replace the stored password of one account.
+ *    - The name of the method is updatePassword. It is used to swap a legacy plaintext password, or a hash made with
+ *      an older work factor, for a fresh hash after a successful login.
+ *
+ * 5. check that an account exists, and list every account id.
+ *    - existsById reads one row through the primary key. getAllAccountIds loads the ids once to fill the in-memory
+ *      set that message creation checks posted_by against.
+ *
+ * 6. look up the usernames of many accounts at once.
+ *    - getUsernamesByIds reads only account_id and username, never the password, with IN queries of at most 256 ids
+ *      each on one connection. It fills the username cache used to put the author's name into message listings.
  */
 
 public class AccountDAO {
 
-/*  Please refrain from using a 'try-with-resources' block when connecting to your database. 
-    The ConnectionUtil provided uses a singleton, and using a try-with-resources will cause issues in the tests.
-    so i will handle that exception or declare it in the method signature using the throws keyword.
+    // SQLState reported when an insert violates a unique constraint, here the one on account.username.
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    // Most account ids read by one username lookup statement; longer id lists are read in chunks of this size.
+    private static final int USERNAME_LOOKUP_CHUNK_SIZE = 256;
+
+/*  Connections come from the pool in ConnectionUtil, and closing a connection hands it back to the pool instead of
+    closing the underlying database connection. So every method borrows its connection, statement and result set in a
+    try-with-resources block, which returns them even when a query throws. SQLExceptions are declared in the method
+    signature using the throws keyword and handled by the service/controller.
 */
-    public List<Account> getAllAccounts() throws SQLException{
-        Connection connection = ConnectionUtil.getConnection();
+    public Account createNewAccount (Account account) throws SQLException {
+
+        String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+
+            preparedStatement.setString(1, account.getUsername());
+            preparedStatement.setString(2,account.getPassword());
+            try {
+                preparedStatement.executeUpdate();
+            } catch (SQLException e) {
+                if (UNIQUE_VIOLATION.equals(e.getSQLState())){
+                    return null;    //username already exists
+                }
+                throw e;
+            }
+
+            try (ResultSet primaryKeyResultSet = preparedStatement.getGeneratedKeys()){
+                if (primaryKeyResultSet.next()){
+                    int generated_account_id = (int) primaryKeyResultSet.getLong(1);
+                    return new Account(generated_account_id, account.username, account.password);
+                }
+            }
+        }
+        return null;
+    } 
 
-        // list to store accounts in memory.
-        List <Account> accounts = new ArrayList<>();
+    public Account findByUsername (String username) throws SQLException {
 
-        String sql = "SELECT * From account";
+        String sql = "SELECT * FROM account WHERE username = ?";
 
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        ResultSet rs = preparedStatement.executeQuery();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)){
 
-        while(rs.next()){
-            Account account = new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString ("password"));
-            accounts.add(account);
-            
+            preparedStatement.setString(1, username);
+
+            try (ResultSet rs = preparedStatement.executeQuery()){
+                if (rs.next()){
+                    return new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+                }
+            }
         }
+        return null;
+    }
 
-        return accounts;
+    public boolean updatePassword (int account_id, String password) throws SQLException {
+
+        String sql = "UPDATE account SET password = ? WHERE account_id = ?";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+
+            preparedStatement.setString(1, password);
+            preparedStatement.setInt(2, account_id);
+            return preparedStatement.executeUpdate() == 1;
+        }
     }
 
-    public Account createNewAccount (Account account) throws SQLException {
-        Connection connection = ConnectionUtil.getConnection();
+    public boolean existsById (int account_id) throws SQLException {
 
-        String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
+        String sql = "SELECT 1 FROM account WHERE account_id = ?";
 
-        PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-        preparedStatement.setString(1, account.getUsername());
-        preparedStatement.setString(2,account.getPassword());
-        preparedStatement.executeUpdate();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)){
 
-        ResultSet primaryKeyResultSet = preparedStatement.getGeneratedKeys();
-        
-        if (primaryKeyResultSet.next()){
-            int generated_account_id = (int) primaryKeyResultSet.getLong(1);
-            return new Account(generated_account_id, account.username, account.password);
+            preparedStatement.setInt(1, account_id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()){
+                return rs.next();
+            }
         }
-        return null;
-    } 
+    }
+
+    public List<Integer> getAllAccountIds () throws SQLException {
+
+        List <Integer> account_ids = new ArrayList<>();
+
+        String sql = "SELECT account_id FROM account";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()){
+
+            while (rs.next()){
+                account_ids.add(rs.getInt("account_id"));
+            }
+        }
+        return account_ids;
+    }
+
+    public List<String> getAllUsernames () throws SQLException {
+
+        List <String> usernames = new ArrayList<>();
+
+        String sql = "SELECT username FROM account";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()){
+
+            while (rs.next()){
+                usernames.add(rs.getString("username"));
+            }
+        }
+        return usernames;
+    }
+
+    public Map<Integer, String> getUsernamesByIds (Collection<Integer> account_ids) throws SQLException {
+
+        Map <Integer, String> usernames = new HashMap<>();
+        if (account_ids.isEmpty()){
+            return usernames;
+        }
+
+        List <Integer> ids = new ArrayList<>(account_ids);
+        try (Connection connection = ConnectionUtil.getConnection()){
+            for (int from = 0; from < ids.size(); from += USERNAME_LOOKUP_CHUNK_SIZE){
+                readUsernames(connection, ids.subList(from, Math.min(from + USERNAME_LOOKUP_CHUNK_SIZE, ids.size())), usernames);
+            }
+        }
+        return usernames;
+    }
+
+    private static void readUsernames (Connection connection, List<Integer> account_ids, Map<Integer, String> usernames) throws SQLException {
+
+        // padded to the next power of two by repeating the last id, like MessageDAO.getMessagesByIds, so the
+        // per-connection statement cache sees only a few distinct statements
+        int parameters = account_ids.size() == 1 ? 1 : Integer.highestOneBit(account_ids.size() - 1) << 1;
+        StringBuilder sql = new StringBuilder("SELECT account_id, username FROM account WHERE account_id IN (?");
+        for (int i = 1; i < parameters; i++){
+            sql.append(",?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql.toString())){
+
+            int index = 1;
+            int last = 0;
+            for (int account_id : account_ids){
+                preparedStatement.setInt(index++, account_id);
+                last = account_id;
+            }
+            while (index <= parameters){
+                preparedStatement.setInt(index++, last);
+            }
+
+            try (ResultSet rs = preparedStatement.executeQuery()){
+                while (rs.next()){
+                    usernames.put(rs.getInt("account_id"), rs.getString("username"));
+                }
+            }
+        }
+    }
 
 }
@@ -0,0 +1,60 @@
+package DAO;
+
+import java.sql.*;
+
+import Model.Message;
+
+/*A forward-only cursor over the rows of a message query, used to stream large listings without loading them into a list.
+
+    - The cursor owns a pooled connection, its statement and its result set until close() is called, so callers must
+      close it, preferably with try-with-resources.
+    - next() reads one row at a time and returns null once the rows run out.
+    - cancel() may be called from any thread to abort the query, e.g. when the client reading the stream has gone away.
+    - The connection runs the query in H2's lazy mode, so rows are produced as they are read instead of the whole result
+      being materialized first. The setting is switched back off before the connection is returned to the pool.
+ */
+
+public class MessageCursor implements AutoCloseable {
+
+    private final Connection connection;
+    private final PreparedStatement preparedStatement;
+    private final ResultSet rs;
+
+    MessageCursor (Connection connection, PreparedStatement preparedStatement) throws SQLException {
+        this.connection = connection;
+        this.preparedStatement = preparedStatement;
+        this.rs = preparedStatement.executeQuery();
+    }
+
+    public Message next () throws SQLException {
+        if (!rs.next()){
+            return null;
+        }
+        return new Message(
+            rs.getInt("message_id"),
+            rs.getInt("posted_by"),
+            rs.getString("message_text"),
+            rs.getLong("time_posted_epoch"));
+    }
+
+    public void cancel () {
+        try {
+            preparedStatement.cancel();
+        } catch (SQLException e) {
+            // the query has already finished or the statement is closed, there is nothing left to cancel
+        }
+    }
+
+    @Override
+    public void close () throws SQLException {
+        try {
+            rs.close();
+            preparedStatement.close();
+            try (Statement statement = connection.createStatement()){
+                statement.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
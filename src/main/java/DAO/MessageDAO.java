@@ -3,7 +3,9 @@ package DAO;
 import java.sql.*;
 import java.util.*;
 
+import Model.AuthoredMessage;
 import Model.Message;
+import Model.VersionedMessage;
 import Util.ConnectionUtil;
 
 /*This class is DAO for message and I have six methods to manipulate and retrive message in our database.
@@ -14,142 +16,340 @@ import Util.ConnectionUtil;
         - The validation of the message text will be handled in our service class.
 *
 2. Retrieve all the messages from our database and put it in our list  and return it in order to be accessible for Authorized users.
-        - The name of the method is getAllmessages.
+        - The name of the method is getAllmessages. Messages come in message_id order, the same order as
+          getAllMessagesWithAuthors, so the plain and the expanded listing agree.
 * 
 3. Retrieve a single message using message ID from a database.
-        - The name of the method would be getMessageById which uses the message id as an input and
-          return that specific message if the request is successful and if not return null.
+        - The name of the method would be getVersionedMessageById which uses the message id as an input and
+          return that specific message together with its row version if the request is successful and if not return null.
 *
 4. Remove a message using message ID from the database if the message existed. 
-        - The name of the message is deleteMessageById which uses message id as an input and retrieve a message by its id
-          then if the message existed in our database, it will delete it and return the deleted message if not it will return null.
+        - The name of the message is deleteMessageById which uses message id as an input. A single DELETE removes the
+          row and returns it, so it returns the deleted message if it existed and null if not, in one round trip.
+        - softDeleteMessageById instead marks the row as deleted by setting deleted_at, also in one statement. Every
+          read below skips marked rows, and purgeDeletedMessages physically deletes them later in small batches.
 *
 5. Update a message by using message ID in our database.
-        - The name of the method would be updateMessageById which will take 2 parameters message id and message object as an input and 
-          if message is available in our database it wll update a the message text and return null, if not it will throw an error.
-        - If a message exists in our database, it will replace old message text with a new text.
+        - The name of the method would be updateMessageById which will take the message id, the new message text and
+          optionally the version the caller expects the row to be at.
+        - A single UPDATE replaces the text and bumps the row's version, and returns the updated row from the same
+          statement, so there is no read before the write and no read after it.
+        - If no row matched, either because the message does not exist or because its version has moved on, it returns
+          null. getVersionedMessageById tells the two apart.
         - The new message text should be validated. The validation of the message text will be handled by our MessageService class.
 *
 6. The last method will be retrive all messages under an account. 
         - the name of the method the method would be getAllMessagesByAccount which will take account ID as an input and retrieve all 
             messages by whom the message is posted by.
         - The retrieved messages will be stored in list returned. 
+*
+7. Retrieve one page of messages, either all messages or the messages under an account.
+        - The names of the methods are getMessagesPage and getMessagesPageByAccount. Pages are ordered by time_posted_epoch
+          and then message_id, and the caller passes the (time_posted_epoch, message_id) of the last message it has seen
+          instead of an offset, so every page is an index range read no matter how deep into the listing it is.
+*
+8. Stream every message through a forward-only cursor.
+        - The name of the method is openMessageCursor and it returns a MessageCursor that reads the rows one at a time,
+          so exporting the whole table takes the same memory as exporting a single message.
+*
+9. Create many messages at once.
+        - The name of the method is createNewMessages. It sends every insert to the database in one JDBC batch inside a
+          single transaction, so either all of the messages are saved or none are, and returns them with their generated
+          ids in the same order. Validation is done by the MessageService before the batch reaches the DAO.
+*
+10. Retrieve many messages by their IDs at once.
+        - The name of the method is getMessagesByIds. It reads all of them with one WHERE message_id IN (...) query
+          and returns the messages it found by id; ids with no message are simply not in the result.
+*
+11. Retrieve all the messages together with the usernames of their posters.
+        - The name of the method is getAllMessagesWithAuthors. It joins account in the same query and reads only its
+          username, never the password, so listing every message with its author costs one round trip.
  */
 
  public class MessageDAO {
 
+    // Rows fetched per round trip when streaming messages through a MessageCursor.
+    private static final int STREAM_FETCH_SIZE = 500;
+
+/*  Every method borrows its connection from the ConnectionUtil pool inside a try-with-resources block, so the
+    connection, statement and result set are handed back even when the query fails.
+*/
+
 /**************************************Create a new message **********************************************/   
 
     public Message CreateNewMessage (Message message) throws SQLException{
 
-        Connection connection = ConnectionUtil.getConnection ();
-
         String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?,?,?)";
 
-        PreparedStatement preparedStatement = connection.prepareStatement (sql, Statement.RETURN_GENERATED_KEYS);
-        preparedStatement.setInt(1,message.getPosted_by());
-        preparedStatement.setString (2, message.getMessage_text());
-        preparedStatement.setLong(3, message.getTime_posted_epoch());
-
-        int rowsAffected = preparedStatement.executeUpdate();
-
-        if (rowsAffected > 0){
-            ResultSet primaryKeyResultSet = preparedStatement.getGeneratedKeys();
-            if (primaryKeyResultSet.next()){
-                int generatedMessageId = primaryKeyResultSet.getInt(1);
-                return (new Message(
-                    generatedMessageId, 
-                    message.getPosted_by(), 
-                    message.getMessage_text(), 
-                    message.getTime_posted_epoch()
-                ));
+        try (Connection connection = ConnectionUtil.getConnection ();
+             PreparedStatement preparedStatement = connection.prepareStatement (sql, Statement.RETURN_GENERATED_KEYS)){
+
+            preparedStatement.setInt(1,message.getPosted_by());
+            preparedStatement.setString (2, message.getMessage_text());
+            preparedStatement.setLong(3, message.getTime_posted_epoch());
+
+            int rowsAffected = preparedStatement.executeUpdate();
+
+            if (rowsAffected > 0){
+                try (ResultSet primaryKeyResultSet = preparedStatement.getGeneratedKeys()){
+                    if (primaryKeyResultSet.next()){
+                        int generatedMessageId = primaryKeyResultSet.getInt(1);
+                        return (new Message(
+                            generatedMessageId, 
+                            message.getPosted_by(), 
+                            message.getMessage_text(), 
+                            message.getTime_posted_epoch()
+                        ));
+                    }
+                }
             }
         }
         return null; //if the message creation fail.
     }
 
+/**************************************Create many messages in one batch **********************************************/
+
+    public List<Message> createNewMessages (List<Message> messages) throws SQLException{
+
+        List <Message> createdMessages = new ArrayList<>(messages.size());
+        if (messages.isEmpty()){
+            return createdMessages;
+        }
+
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?,?,?)";
+
+        try (Connection connection = ConnectionUtil.getConnection()){
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+
+                for (Message message : messages){
+                    preparedStatement.setInt(1, message.getPosted_by());
+                    preparedStatement.setString(2, message.getMessage_text());
+                    preparedStatement.setLong(3, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                try (ResultSet primaryKeyResultSet = preparedStatement.getGeneratedKeys()){
+                    for (Message message : messages){
+                        if (!primaryKeyResultSet.next()){
+                            throw new SQLException("Expected " + messages.size() + " generated keys, got " + createdMessages.size());
+                        }
+                        createdMessages.add(new Message(
+                            primaryKeyResultSet.getInt(1),
+                            message.getPosted_by(),
+                            message.getMessage_text(),
+                            message.getTime_posted_epoch()
+                        ));
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        return createdMessages;
+    }
+
 /***************************************Retrieve all the messages***********************************************/
 
     public List<Message> getAllMessages() throws SQLException{
 
-        Connection connection = ConnectionUtil.getConnection();
-
         List <Message> allMessages = new ArrayList<>();
 
-        String sql = "SELECT * FROM Message";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        ResultSet rs = preparedStatement.executeQuery();
+        String sql = "SELECT * FROM message WHERE deleted_at IS NULL ORDER BY message_id";
 
-        while (rs.next()){
-            Message message = new Message (
-                rs.getInt ("message_id"),
-                rs.getInt("posted_by"),
-                rs.getString("message_text"),
-                rs.getLong("time_posted_epoch"));
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()){
+
+            while (rs.next()){
+                Message message = new Message (
+                    rs.getInt ("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch"));
+
+                //adding all the messages into our list
+                    allMessages.add(message);
+            }
+        }
+        return allMessages;
+    }
+/***************************************Retrieve all the messages with their authors***********************************************/
 
-            //adding all the messages into our list
-                allMessages.add(message);
+    public List<Message> getAllMessagesWithAuthors() throws SQLException{
+
+        List <Message> allMessages = new ArrayList<>();
+
+        String sql = "SELECT m.message_id, m.posted_by, m.message_text, m.time_posted_epoch, a.username"
+            + " FROM message m LEFT JOIN account a ON a.account_id = m.posted_by"
+            + " WHERE m.deleted_at IS NULL ORDER BY m.message_id";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()){
+
+            while (rs.next()){
+                Message message = new Message (
+                    rs.getInt ("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch"));
+                allMessages.add(new AuthoredMessage(message, rs.getString("username")));
+            }
         }
         return allMessages;
     }
 /************************************Retrieve a message by ID*********************************************/
 
-    public Message getMessageById (int message_id) throws SQLException {
-        
-        Connection connection = ConnectionUtil.getConnection();
-        
-        String sql = "SELECT * FROM message WHERE message_id = ?";
-        
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setInt(1, message_id);
-        
-        ResultSet rs = preparedStatement.executeQuery();
-
-        if (rs.next()){
-            return new Message(
-                rs.getInt("message_id"),
-                rs.getInt ("posted_by"),
-                rs.getString("message_text"),
-                rs.getLong("time_posted_epoch"));
+    public VersionedMessage getVersionedMessageById (int message_id) throws SQLException {
+
+        String sql = "SELECT * FROM message WHERE message_id = ? AND deleted_at IS NULL";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+
+            preparedStatement.setInt(1, message_id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()){
+                return rs.next() ? readVersionedMessage(rs) : null;
+            }
         }
-        return null; 
-    } 
+    }
+
+/************************************Retrieve many messages by ID*********************************************/
+
+    public Map <Integer, VersionedMessage> getMessagesByIds (Collection <Integer> message_ids) throws SQLException {
+
+        Map <Integer, VersionedMessage> messages = new HashMap<>();
+        if (message_ids.isEmpty()){
+            return messages;
+        }
+
+        // the IN list is padded to the next power of two by repeating the last id, so only a few distinct statements
+        // exist and the per-connection statement cache keeps hitting whatever the number of ids
+        int parameters = message_ids.size() == 1 ? 1 : Integer.highestOneBit(message_ids.size() - 1) << 1;
+        StringBuilder sql = new StringBuilder("SELECT * FROM message WHERE deleted_at IS NULL AND message_id IN (?");
+        for (int i = 1; i < parameters; i++){
+            sql.append(",?");
+        }
+        sql.append(")");
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql.toString())){
+
+            int index = 1;
+            int last = 0;
+            for (int message_id : message_ids){
+                preparedStatement.setInt(index++, message_id);
+                last = message_id;
+            }
+            while (index <= parameters){
+                preparedStatement.setInt(index++, last);
+            }
+
+            try (ResultSet rs = preparedStatement.executeQuery()){
+                while (rs.next()){
+                    VersionedMessage message = readVersionedMessage(rs);
+                    messages.put(message.getMessage().getMessage_id(), message);
+                }
+            }
+        }
+        return messages;
+    }
 
 /*************************************Delete a message by ID**************************************************/
     
     public Message deleteMessageById (int message_id) throws SQLException {
 
-        Message existingMessage = getMessageById(message_id);
-        if (existingMessage == null){
-            return null;
+        // OLD TABLE returns the rows as they were before the DELETE removed them, in the same round trip
+        String deleteSql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ? AND deleted_at IS NULL)";
+
+        return deleteReturningMessage(deleteSql, message_id, null);
+    }
+
+    public Message softDeleteMessageById (int message_id, long deleted_at) throws SQLException {
+
+        String deleteSql = "SELECT * FROM OLD TABLE (UPDATE message SET deleted_at = ?, version = version + 1 "
+            + "WHERE message_id = ? AND deleted_at IS NULL)";
+
+        return deleteReturningMessage(deleteSql, message_id, deleted_at);
+    }
+
+    private Message deleteReturningMessage (String deleteSql, int message_id, Long deleted_at) throws SQLException {
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement deletedStatement = connection.prepareStatement(deleteSql)){
+
+            int index = 1;
+            if (deleted_at != null){
+                deletedStatement.setLong(index++, deleted_at);
+            }
+            deletedStatement.setInt(index, message_id);
+
+            try (ResultSet rs = deletedStatement.executeQuery()){
+                return rs.next() ? readVersionedMessage(rs).getMessage() : null;
+            }
         }
+    }
 
-        Connection connection = ConnectionUtil.getConnection();
-        String deleteSql = "DELETE FROM message WHERE message_id = ?";
-        PreparedStatement deletedStatement = connection.prepareStatement(deleteSql);
-        deletedStatement.setInt(1, message_id);
+/*************************************Purge soft deleted messages**************************************************/
 
-        int rowsDeleted = deletedStatement.executeUpdate();
-            
-    
-        return rowsDeleted > 0? existingMessage : null;
+    /*
+     * Physically deletes up to limit messages that were soft deleted at or before deletedBefore, and returns how many
+     * it deleted. Each call is one short statement, so the caller can spread a large purge over many small ones.
+     */
+    public int purgeDeletedMessages (long deletedBefore, int limit) throws SQLException {
+
+        String sql = "DELETE FROM message WHERE deleted_at <= ? FETCH FIRST ? ROWS ONLY";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+
+            preparedStatement.setLong(1, deletedBefore);
+            preparedStatement.setInt(2, limit);
+            return preparedStatement.executeUpdate();
+        }
     }
 
 /*******************************************Update message by ID***************************************************/
 
-    public Message updateMessageById (int message_id, Message message) throws SQLException{
-        
-        Connection connection = ConnectionUtil.getConnection();
+    public VersionedMessage updateMessageById (int message_id, String message_text, Long expectedVersion) throws SQLException{
+
+        // FINAL TABLE returns the rows as the UPDATE left them, in the same round trip
+        String updateSql = expectedVersion == null
+            ? "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ?, version = version + 1 "
+                + "WHERE message_id = ? AND deleted_at IS NULL)"
+            : "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ?, version = version + 1 "
+                + "WHERE message_id = ? AND deleted_at IS NULL AND version = ?)";
 
-        String updateSql = "UPDATE message SET message_text = ? WHERE message_id = ?";
-        
-        PreparedStatement updateStatement = connection.prepareStatement(updateSql);
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement updateStatement = connection.prepareStatement(updateSql)){
 
-        updateStatement.setString (1, message.getMessage_text());
-        updateStatement.setInt (2, message_id);
-        updateStatement.executeUpdate();
+            updateStatement.setString (1, message_text);
+            updateStatement.setInt (2, message_id);
+            if (expectedVersion != null){
+                updateStatement.setLong (3, expectedVersion);
+            }
+
+            try (ResultSet rs = updateStatement.executeQuery()){
+                return rs.next() ? readVersionedMessage(rs) : null;
+            }
+        }
+    }
 
-       return null;
+    private static VersionedMessage readVersionedMessage (ResultSet rs) throws SQLException {
+        return new VersionedMessage(
+            new Message(
+                rs.getInt("message_id"),
+                rs.getInt("posted_by"),
+                rs.getString("message_text"),
+                rs.getLong("time_posted_epoch")),
+            rs.getLong("version"));
     }
 
 /**************************************Retrieve all messages under a given account*******************************************/
@@ -158,26 +358,134 @@ import Util.ConnectionUtil;
 
         //since posted by refers to account_id, account_id is equal to posted_by 
         List <Message> allMessagesInThisAccount = new ArrayList<>(); 
-        Connection connection = ConnectionUtil.getConnection();
 
-        String sql = "SELECT * FROM message WHERE posted_by = ?";
+        // the (posted_by, deleted_at, time_posted_epoch, message_id) index already returns rows in this order; it is
+        // spelled out because the timeline cache keeps its lists in the same order. The constant leading columns are
+        // part of the ORDER BY only because H2 recognizes the index as sorted just when the ORDER BY starts with them.
+        String sql = "SELECT * FROM message WHERE posted_by = ? AND deleted_at IS NULL "
+            + "ORDER BY posted_by, deleted_at, time_posted_epoch, message_id";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+
+            preparedStatement.setInt(1, account_id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()){
+                while (rs.next()){
+                    Message message = new Message(
+                        rs.getInt("message_id"),
+                        rs.getInt("posted_by"),
+                        rs.getString("message_text"),
+                        rs.getLong("time_posted_epoch")
+                    );
+                    allMessagesInThisAccount.add(message);
+                }
+            }
+        }
+        return allMessagesInThisAccount;
 
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setInt(1, account_id);
+    }
 
-        ResultSet rs = preparedStatement.executeQuery();
+/**************************************Retrieve one page of messages*******************************************/
+
+    /*
+     * Returns up to limit messages that come after the given (time_posted_epoch, message_id) position, or the first
+     * messages when afterTimePostedEpoch is null. Both pages are a range read of the (deleted_at, time_posted_epoch,
+     * message_id) index that stops after limit rows; deleted_at, which is always null here, leads the ORDER BY so
+     * that H2 reads the index in order instead of sorting.
+     */
+    public List <Message> getMessagesPage (Long afterTimePostedEpoch, int afterMessageId, int limit) throws SQLException {
+
+        String sql = afterTimePostedEpoch == null
+            ? "SELECT * FROM message WHERE deleted_at IS NULL ORDER BY deleted_at, time_posted_epoch, message_id LIMIT ?"
+            : "SELECT * FROM message WHERE deleted_at IS NULL AND time_posted_epoch >= ? "
+                + "AND (time_posted_epoch > ? OR message_id > ?) ORDER BY deleted_at, time_posted_epoch, message_id LIMIT ?";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+
+            int index = 1;
+            if (afterTimePostedEpoch != null){
+                preparedStatement.setLong(index++, afterTimePostedEpoch);
+                preparedStatement.setLong(index++, afterTimePostedEpoch);
+                preparedStatement.setInt(index++, afterMessageId);
+            }
+            preparedStatement.setInt(index, limit);
 
-        while (rs.next()){
-            Message message = new Message(
-                rs.getInt("message_id"),
-                rs.getInt("posted_by"),
-                rs.getString("message_text"),
-                rs.getLong("time_posted_epoch")
-            );
-            allMessagesInThisAccount.add(message);
+            return readMessages(preparedStatement, limit);
         }
-        return allMessagesInThisAccount;
+    }
+
+    /*
+     * Same as getMessagesPage, restricted to the messages posted by one account and read from the
+     * (posted_by, deleted_at, time_posted_epoch, message_id) index.
+     */
+    public List <Message> getMessagesPageByAccount (int account_id, Long afterTimePostedEpoch, int afterMessageId, int limit) throws SQLException {
+
+        String sql = afterTimePostedEpoch == null
+            ? "SELECT * FROM message WHERE posted_by = ? AND deleted_at IS NULL "
+                + "ORDER BY posted_by, deleted_at, time_posted_epoch, message_id LIMIT ?"
+            : "SELECT * FROM message WHERE posted_by = ? AND deleted_at IS NULL AND time_posted_epoch >= ? "
+                + "AND (time_posted_epoch > ? OR message_id > ?) ORDER BY posted_by, deleted_at, time_posted_epoch, message_id LIMIT ?";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+
+            int index = 1;
+            preparedStatement.setInt(index++, account_id);
+            if (afterTimePostedEpoch != null){
+                preparedStatement.setLong(index++, afterTimePostedEpoch);
+                preparedStatement.setLong(index++, afterTimePostedEpoch);
+                preparedStatement.setInt(index++, afterMessageId);
+            }
+            preparedStatement.setInt(index, limit);
+
+            return readMessages(preparedStatement, limit);
+        }
+    }
 
+/**************************************Stream all the messages*******************************************/
+
+    /*
+     * The returned cursor holds on to its connection until it is closed.
+     */
+    public MessageCursor openMessageCursor () throws SQLException {
+
+        String sql = "SELECT * FROM message WHERE deleted_at IS NULL ORDER BY deleted_at, time_posted_epoch, message_id";
+
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            try (Statement statement = connection.createStatement()){
+                statement.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            return new MessageCursor(connection, preparedStatement);
+        } catch (SQLException e) {
+            try (Statement statement = connection.createStatement()){
+                statement.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            } finally {
+                connection.close();
+            }
+            throw e;
+        }
+    }
+
+    private List <Message> readMessages (PreparedStatement preparedStatement, int expectedSize) throws SQLException {
+
+        List <Message> messages = new ArrayList<>(expectedSize);
+
+        try (ResultSet rs = preparedStatement.executeQuery()){
+            while (rs.next()){
+                messages.add(new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")
+                ));
+            }
+        }
+        return messages;
     }
 
 }
\ No newline at end of file
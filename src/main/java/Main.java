@@ -1,4 +1,5 @@
 import Controller.SocialMediaController;
+import Util.SchemaMigrator;
 import io.javalin.Javalin;
 
 /**
@@ -7,6 +8,9 @@ import io.javalin.Javalin;
  */
 public class Main {
     public static void main(String[] args) {
+        // bring the database schema up to date before serving any requests
+        SchemaMigrator.migrate();
+
         SocialMediaController controller = new SocialMediaController();
         Javalin app = controller.startAPI();
         app.start(8080);
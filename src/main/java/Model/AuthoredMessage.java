@@ -0,0 +1,77 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * This is a class that models a Message together with the username of the account that posted it, as returned by
+ * message listings with expand=author. Only the username is carried over from the account, never its password.
+ */
+public class AuthoredMessage extends Message {
+    /**
+     * The username of the account with account_id posted_by, or null if that account does not exist.
+     */
+    public String posted_by_username;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public AuthoredMessage(){
+    }
+    /**
+     * @param message
+     * @param posted_by_username
+     */
+    public AuthoredMessage(Message message, String posted_by_username) {
+        super(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+        this.posted_by_username = posted_by_username;
+    }
+    /**
+     * @return posted_by_username
+     */
+    public String getPosted_by_username() {
+        return posted_by_username;
+    }
+    /**
+     * @param posted_by_username
+     */
+    public void setPosted_by_username(String posted_by_username) {
+        this.posted_by_username = posted_by_username;
+    }
+    /**
+     * Overriding the default equals() method adds functionality to tell when two objects are identical, allowing
+     * Assert.assertEquals and List.contains to function.
+     * @param o the other object.
+     * @return true if o is equal to this object.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) return false;
+        AuthoredMessage message = (AuthoredMessage) o;
+        return posted_by_username == null ? message.posted_by_username == null
+                : posted_by_username.equals(message.posted_by_username);
+    }
+    /**
+     * Overriding the default hashCode() method keeps it consistent with equals(), so equal messages can be found in a
+     * HashSet or HashMap. Message does not override hashCode(), so its fields are hashed here instead of calling
+     * super.hashCode(), which would differ between equal objects.
+     * @return a hash of every field compared by equals().
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(message_id, posted_by, message_text, time_posted_epoch, posted_by_username);
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "AuthoredMessage{" +
+                "message_id=" + message_id +
+                ", posted_by=" + posted_by +
+                ", posted_by_username='" + posted_by_username + '\'' +
+                ", message_text='" + message_text + '\'' +
+                ", time_posted_epoch=" + time_posted_epoch +
+                '}';
+    }
+}
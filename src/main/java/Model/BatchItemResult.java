@@ -0,0 +1,114 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one message in a batch creation request.
+ */
+public class BatchItemResult {
+    /**
+     * The position of the message in the request array.
+     */
+    public int index;
+    /**
+     * 200 if the message was created, 400 if it failed validation.
+     */
+    public int status;
+    /**
+     * The created message, including its generated message_id, or null if it was rejected.
+     */
+    public Message message;
+    /**
+     * Why the message was rejected, or null if it was created.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public BatchItemResult(){
+    }
+    /**
+     * @param index
+     * @param status
+     * @param message
+     * @param error
+     */
+    public BatchItemResult(int index, int status, Message message, String error) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+    /**
+     * @return a result for a message that was created
+     */
+    public static BatchItemResult created(int index, Message message) {
+        return new BatchItemResult(index, 200, message, null);
+    }
+    /**
+     * @return a result for a message that was rejected
+     */
+    public static BatchItemResult rejected(int index, String error) {
+        return new BatchItemResult(index, 400, null, error);
+    }
+    /**
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * @return status
+     */
+    public int getStatus() {
+        return status;
+    }
+    /**
+     * @param status
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "BatchItemResult{" +
+                "index=" + index +
+                ", status=" + status +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a paginated message listing.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, ordered by time_posted_epoch and then message_id.
+     */
+    public List<Message> items;
+    /**
+     * An opaque cursor that fetches the page after this one, or null if this is the last page.
+     */
+    public String next_cursor;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessagePage(){
+    }
+    /**
+     * @param items
+     * @param next_cursor
+     */
+    public MessagePage(List<Message> items, String next_cursor) {
+        this.items = items;
+        this.next_cursor = next_cursor;
+    }
+    /**
+     * @return items
+     */
+    public List<Message> getItems() {
+        return items;
+    }
+    /**
+     * @param items
+     */
+    public void setItems(List<Message> items) {
+        this.items = items;
+    }
+    /**
+     * @return next_cursor
+     */
+    public String getNext_cursor() {
+        return next_cursor;
+    }
+    /**
+     * @param next_cursor
+     */
+    public void setNext_cursor(String next_cursor) {
+        this.next_cursor = next_cursor;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessagePage{" +
+                "items=" + items +
+                ", next_cursor='" + next_cursor + '\'' +
+                '}';
+    }
+}
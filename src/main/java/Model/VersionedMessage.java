@@ -0,0 +1,47 @@
+package Model;
+
+/**
+ * This is a class that pairs a Message with the version of its database row. The version starts at 0 and goes up by
+ * one on every update, and is handed to clients as the message's ETag so they can make an update conditional on it.
+ */
+public class VersionedMessage {
+    /**
+     * The message as stored at this version.
+     */
+    private final Message message;
+    /**
+     * The version of the row the message was read from.
+     */
+    private final long version;
+    /**
+     * @param message
+     * @param version
+     */
+    public VersionedMessage(Message message, long version) {
+        this.message = message;
+        this.version = version;
+    }
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "VersionedMessage{" +
+                "message=" + message +
+                ", version=" + version +
+                '}';
+    }
+}
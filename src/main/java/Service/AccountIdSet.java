@@ -0,0 +1,71 @@
+package Service;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*An in-memory set of existing account ids, used to check that a message's posted_by refers to a real account without
+ * fetching the account table.
+
+    - The ids are kept in a bitset, one bit per account id, so a million accounts cost 125KB and contains() is a shift,
+      a mask and one array read, with no allocation and no boxing.
+    - Reads take no lock. Adds are rare (one per registration) and synchronized, which also covers growing the bitset,
+      so an id added while the array is being copied is never lost.
+    - The set only ever answers "yes, this account exists". A miss is not proof that the account is missing, since it
+      may have been created by another instance, so callers fall back to the database on a miss.
+    - Ids above MAX_TRACKED_ID are never stored, and always go to the database, so a stray huge id cannot make the
+      bitset grow without bound.
+ */
+
+public class AccountIdSet {
+
+    // 2^24 ids, i.e. at most a 2MB bitset.
+    static final int MAX_TRACKED_ID = (1 << 24) - 1;
+
+    private volatile AtomicLongArray words = new AtomicLongArray(16);
+    private int size;
+
+    public boolean contains (int account_id){
+        if (account_id < 0){
+            return false;
+        }
+        AtomicLongArray current = words;
+        int word = account_id >>> 6;
+        return word < current.length() && (current.get(word) & (1L << account_id)) != 0;
+    }
+
+    public synchronized void add (int account_id){
+        if (account_id < 0 || account_id > MAX_TRACKED_ID){
+            return;
+        }
+        int word = account_id >>> 6;
+        AtomicLongArray current = words;
+        if (word >= current.length()){
+            AtomicLongArray grown = new AtomicLongArray(Math.max(word + 1, current.length() * 2));
+            for (int i = 0; i < current.length(); i++){
+                grown.set(i, current.get(i));
+            }
+            words = grown;
+            current = grown;
+        }
+        long bit = 1L << account_id;
+        if ((current.get(word) & bit) == 0){
+            current.set(word, current.get(word) | bit);
+            size++;
+        }
+    }
+
+    public synchronized void addAll (Collection <Integer> account_ids){
+        for (int account_id : account_ids){
+            add(account_id);
+        }
+    }
+
+    public synchronized int size (){
+        return size;
+    }
+
+    // Bytes held by the bitset itself.
+    public long footprintBytes (){
+        return words.length() * 8L;
+    }
+}
@@ -1,80 +1,205 @@
 package Service;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import DAO.AccountDAO;
 import Model.Account;
+import Util.CacheStats;
+import Util.LruCache;
 import java.util.*;
 
 
 public class AccountService {
 
     private final AccountDAO accountDAO;
+    private final PasswordHasher passwordHasher;
+
+    // Set when the in-memory username registry is enabled.
+    private volatile UsernameRegistry usernameRegistry;
+
+    // Ids of accounts known to exist, loaded on the first existence check.
+    private final AccountIdSet accountIds = new AccountIdSet();
+    private volatile boolean accountIdsLoaded = false;
+    private final AtomicLong accountIdHits = new AtomicLong();
+    private final AtomicLong accountIdLookups = new AtomicLong();
+
+    // Usernames by account id, for the author names in expanded message listings. Usernames never change, so entries
+    // never need invalidating.
+    private final LruCache <Integer, String> usernameCache = new LruCache<>(
+        Integer.getInteger("accounts.usernameCache.maxSize", 10000),
+        Long.getLong("accounts.usernameCache.negativeTtlMillis", 2000L));
 
     // Constructor to initialize AccountDAO dependency
     public AccountService (AccountDAO accountDAO){
+        this(accountDAO, PasswordHasher.fromSystemProperties());
+    }
+
+    public AccountService (AccountDAO accountDAO, PasswordHasher passwordHasher){
         this.accountDAO = accountDAO;
+        this.passwordHasher = passwordHasher;
     }
 /******************************Create a new account in the database using a post request*********************************/
 
-    public Account createNewAccount (Account account) throws SQLException {
+    /*
+     * The password is hashed on the PasswordHasher pool and the account is then inserted on the given database executor,
+     * so the hashing threads never wait on a connection. The future completes with null when validation fails or the
+     * username is taken, and exceptionally with a RejectedExecutionException when the hashing pool or the executor is
+     * saturated. The account in the future carries the submitted password, never the stored hash.
+     */
+    public CompletableFuture <Account> createNewAccount (Account account, DatabaseExecutor inserts) {
 
         // Get username and password from account
         String username = account.getUsername();
         String password = account.getPassword();
 
-        // Retrieve all accounts from the database
-        List <Account> allAccounts = accountDAO.getAllAccounts(); 
-
-        // Check if the username already exists in the database
-        for (Account existingAccount : allAccounts){
-            if (existingAccount.getUsername().equals(username)){
-                return null;    //indicates username already exists
-            }
-        }
-
         //Validate that the username is not blank
         if (username == null || username.isBlank() ){
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
 
         //validate that the password is at least 4 character long.
         if (password == null || password.length() < 4){
-            return null;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // When the registry is enabled, a username it already knows is rejected without going to the database
+        UsernameRegistry registry = usernameRegistry;
+        if (registry != null && !registry.reserve(username)){
+            return CompletableFuture.completedFuture(null);    //indicates username already exists
         }
 
-         // If all validations pass, create the new account
-        return accountDAO.createNewAccount(account);
-        
+        // If all validations pass, create the new account. The unique constraint on username makes the insert
+        // itself the uniqueness check, and the DAO returns null if the username already exists.
+        return passwordHasher.hash(password)
+            .thenCompose(hash -> inserts.submit(() -> {
+                Account created = accountDAO.createNewAccount(new Account(username, hash));
+                if (created == null){
+                    return null;
+                }
+                accountIds.add(created.getAccount_id());
+                return new Account(created.getAccount_id(), username, password);
+            }))
+            .whenComplete((created, error) -> {
+                if (error != null && registry != null){
+                    registry.release(username);
+                }
+            });
+    }
+
+/******************************Optional in-memory registry of taken usernames*********************************/
+
+    // Loads every existing username so that duplicate registrations can be rejected from memory from now on.
+    public void enableUsernameRegistry () throws SQLException {
+        UsernameRegistry registry = new UsernameRegistry();
+        registry.addAll(accountDAO.getAllUsernames());
+        this.usernameRegistry = registry;
+    }
+
+    // Returns null when the registry is not enabled.
+    public UsernameRegistry getUsernameRegistry (){
+        return usernameRegistry;
+    }
+
+/******************************Check that an account exists*********************************/
+
+/*Used by message creation to validate posted_by. The in-memory set answers for every account it knows; an id it does
+ * not know costs one primary key lookup, and is added to the set if the account turns out to exist.
+*/
+
+    public boolean accountExists (int account_id) throws SQLException {
+        if (!accountIdsLoaded){
+            loadAccountIds();
+        }
+        if (accountIds.contains(account_id)){
+            accountIdHits.incrementAndGet();
+            return true;
+        }
+        accountIdLookups.incrementAndGet();
+        if (accountDAO.existsById(account_id)){
+            accountIds.add(account_id);
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void loadAccountIds () throws SQLException {
+        if (!accountIdsLoaded){
+            accountIds.addAll(accountDAO.getAllAccountIds());
+            accountIdsLoaded = true;
+        }
+    }
+
+    // Size, footprint and hit counts of the account id set, for /metrics.
+    public Map <String, Object> getAccountIdStats (){
+        Map <String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", accountIds.size());
+        stats.put("footprintBytes", accountIds.footprintBytes());
+        stats.put("hitCount", accountIdHits.get());
+        stats.put("databaseLookupCount", accountIdLookups.get());
+        return stats;
     }
 
 /**************************Authenticate a user who want to login using their post request********************************/
 
-/*In order to authenticat a user we should check their username and password exists in our all users accounts list,
- * if the username is available, then we will check the password is valid password 
- *      if password is the same as the password in the list the the user is authenticted to login and return an account
- *      else the user is unauthorized to login and thrown  401 unauthorized error.   
+/*In order to authenticate a user we look up their account by username through the unique index, then check the
+ * submitted password against the stored hash on the PasswordHasher pool.
+ *      if the password matches, the future completes with the account and the user is authenticated to login.
+ *      else it completes with null and the user is unauthorized to login and gets a 401 unauthorized error.
+ *
+ * Accounts created before passwords were hashed still hold their plaintext password. Those, and hashes made with an
+ * older work factor, are replaced with a fresh hash after the first successful login, so existing users migrate
+ * without a reset. An unknown username is checked against a dummy hash, so it takes as long as a wrong password.
 */
 
-    public Account authenticateUser(Account account) throws SQLException {
+    public CompletableFuture <Account> authenticateUser(Account account) throws SQLException {
 
-        // Retrieve all accounts from the database
-        List <Account> allUsers  = accountDAO.getAllAccounts();
+        String password = account.getPassword();
+        Account existingUser = accountDAO.findByUsername(account.getUsername());
+        String stored = existingUser == null ? null : existingUser.getPassword();
 
-        // Check if username and password match any existing account
-        for (Account existingUser : allUsers){
-            if (existingUser.getUsername().equals(account.getUsername()) && existingUser.getPassword().equals(account.getPassword())){
-                return existingUser;    // Return existing account if authentication is successful
+        return passwordHasher.verify(password, stored).thenApply(matches -> {
+            if (!matches){
+                return null;    // Return null if authentication fails
+            }
+            if (passwordHasher.needsRehash(stored)){
+                upgradePassword(existingUser.getAccount_id(), password);
             }
+            // Return the account with the password the user logged in with, never the stored hash
+            return new Account(existingUser.getAccount_id(), existingUser.getUsername(), password);
+        });
+    }
+
+    // Runs on the hashing pool after a successful login. A failed upgrade is retried on the next login.
+    private void upgradePassword (int account_id, String password){
+        try {
+            accountDAO.updatePassword(account_id, passwordHasher.hashNow(password));
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
         }
+    }
+
+    public PasswordHasherStats getPasswordHasherStats (){
+        return passwordHasher.getStats();
+    }
+
+/******************************Look up the usernames of many accounts*********************************/
+
+/*Returns the username of every given account that exists. Names in the username cache are served from it, and all of
+ * the other ids are read on one connection in chunks of 256, so a page of messages costs one account round trip for
+ * every 256 authors missing from the cache.
+*/
+
+    public Map <Integer, String> getUsernames (Collection <Integer> account_ids) throws SQLException {
+        return usernameCache.getAll(account_ids, accountDAO::getUsernamesByIds);
+    }
 
-        // Return null if authentication fails
-        return null;
+    public CacheStats getUsernameCacheStats (){
+        return usernameCache.getStats();
     }
 
-/********************************************retreive all Accounts from a database****************************************/
-    public List <Account> getAllAccounts () throws SQLException{
-        // Call DAO method to get all accounts
-        return accountDAO.getAllAccounts();
+    public void shutdown (){
+        passwordHasher.shutdown();
     }
 }
 
@@ -0,0 +1,97 @@
+package Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Util.LatencyRecorder;
+
+/*A named, bounded thread pool for one class of database work, e.g. point reads, scans or writes.
+
+    - Each class of work gets its own pool, so a burst of slow full-table scans can only occupy the scan threads and
+      the connections they hold, while point reads and writes keep their own threads.
+    - The queue is bounded: work beyond it is rejected at once with a RejectedExecutionException, which the controller
+      answers with 503, instead of piling up behind work that is already late.
+    - Queue wait and run time are recorded separately, so a pool that is too small shows up as queue wait.
+ */
+
+public class DatabaseExecutor {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    private final LatencyRecorder queueLatency = new LatencyRecorder();
+    private final LatencyRecorder runLatency = new LatencyRecorder();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public DatabaseExecutor (String name, int threads, int queueCapacity){
+        if (threads < 1 || queueCapacity < 1){
+            throw new IllegalArgumentException("invalid settings for the " + name + " executor");
+        }
+        this.name = name;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "db-" + name + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    // Settings come from db.executors.<name>.threads and db.executors.<name>.queueCapacity.
+    public static DatabaseExecutor fromSystemProperties (String name, int defaultThreads, int defaultQueueCapacity){
+        return new DatabaseExecutor(name,
+            Integer.getInteger("db.executors." + name + ".threads", defaultThreads),
+            Integer.getInteger("db.executors." + name + ".queueCapacity", defaultQueueCapacity));
+    }
+
+    /*
+     * Runs the work on this pool. The future fails with a RejectedExecutionException if the queue is full, and with a
+     * CompletionException around anything the work throws.
+     */
+    public <T> CompletableFuture <T> submit (Callable <T> work){
+        long queuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                queueLatency.recordSince(queuedAt);
+                long start = System.nanoTime();
+                try {
+                    return work.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    runLatency.recordSince(start);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public String getName (){
+        return name;
+    }
+
+    public DatabaseExecutorStats getStats (){
+        return new DatabaseExecutorStats(executor.getMaximumPoolSize(), executor.getActiveCount(),
+            executor.getQueue().size(), executor.getQueue().size() + executor.getQueue().remainingCapacity(),
+            executor.getCompletedTaskCount(), rejectedCount.get(), queueLatency.snapshot(), runLatency.snapshot());
+    }
+
+    public void shutdown (){
+        executor.shutdown();
+    }
+}
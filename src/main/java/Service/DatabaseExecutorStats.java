@@ -0,0 +1,80 @@
+package Service;
+
+import Util.LatencyRecorder.LatencySnapshot;
+
+/*A point-in-time snapshot of one DatabaseExecutor pool and its latencies. Getters are provided so that Jackson can
+ * render a snapshot as JSON.
+ */
+
+public class DatabaseExecutorStats {
+
+    private final int threads;
+    private final int activeThreads;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long completedCount;
+    private final long rejectedCount;
+    private final LatencySnapshot queueWait;
+    private final LatencySnapshot runTime;
+
+    public DatabaseExecutorStats (int threads, int activeThreads, int queueDepth, int queueCapacity, long completedCount,
+            long rejectedCount, LatencySnapshot queueWait, LatencySnapshot runTime){
+        this.threads = threads;
+        this.activeThreads = activeThreads;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.completedCount = completedCount;
+        this.rejectedCount = rejectedCount;
+        this.queueWait = queueWait;
+        this.runTime = runTime;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    // Work waiting for a thread of this pool right now.
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    // Work turned away because the queue was full.
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    // Time between work being queued and a thread picking it up.
+    public LatencySnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    // Time spent running once a thread has picked the work up.
+    public LatencySnapshot getRunTime() {
+        return runTime;
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseExecutorStats{" +
+                "threads=" + threads +
+                ", activeThreads=" + activeThreads +
+                ", queueDepth=" + queueDepth +
+                ", completed=" + completedCount +
+                ", rejected=" + rejectedCount +
+                ", queueWait=" + queueWait +
+                ", runTime=" + runTime +
+                '}';
+    }
+}
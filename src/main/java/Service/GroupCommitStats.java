@@ -0,0 +1,104 @@
+package Service;
+
+/*A point-in-time snapshot of the GroupCommitWriter settings and counters. Getters are provided so that Jackson can
+ * render a snapshot as JSON.
+ */
+
+public class GroupCommitStats {
+
+    private final int maxBatchSize;
+    private final long maxWaitMicros;
+    private final int queueCapacity;
+    private final int queueDepth;
+    private final long submittedCount;
+    private final long rejectedCount;
+    private final long writtenCount;
+    private final long failedCount;
+    private final long batchCount;
+    private final double averageBatchSize;
+    private final long largestBatch;
+    private final long averageCommitMicros;
+
+    public GroupCommitStats (int maxBatchSize, long maxWaitMicros, int queueCapacity, int queueDepth, long submittedCount,
+            long rejectedCount, long writtenCount, long failedCount, long batchCount, double averageBatchSize,
+            long largestBatch, long averageCommitMicros){
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMicros = maxWaitMicros;
+        this.queueCapacity = queueCapacity;
+        this.queueDepth = queueDepth;
+        this.submittedCount = submittedCount;
+        this.rejectedCount = rejectedCount;
+        this.writtenCount = writtenCount;
+        this.failedCount = failedCount;
+        this.batchCount = batchCount;
+        this.averageBatchSize = averageBatchSize;
+        this.largestBatch = largestBatch;
+        this.averageCommitMicros = averageCommitMicros;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getMaxWaitMicros() {
+        return maxWaitMicros;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    // Messages waiting for the writer right now.
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    // Messages turned away because the queue was full.
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public double getAverageBatchSize() {
+        return averageBatchSize;
+    }
+
+    public long getLargestBatch() {
+        return largestBatch;
+    }
+
+    // Average time to insert and commit one group.
+    public long getAverageCommitMicros() {
+        return averageCommitMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitStats{" +
+                "queueDepth=" + queueDepth +
+                ", submitted=" + submittedCount +
+                ", rejected=" + rejectedCount +
+                ", written=" + writtenCount +
+                ", failed=" + failedCount +
+                ", batches=" + batchCount +
+                ", averageBatchSize=" + averageBatchSize +
+                ", largestBatch=" + largestBatch +
+                ", averageCommitMicros=" + averageCommitMicros +
+                '}';
+    }
+}
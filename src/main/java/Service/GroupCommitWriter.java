@@ -0,0 +1,196 @@
+package Service;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/*Group commit for message inserts.
+
+    Callers hand their already validated message to submit() and get a future back. A single writer thread takes the
+    first waiting message, then keeps collecting until it has maxBatchSize messages or maxWaitMicros have passed, and
+    writes the whole group with MessageDAO.createNewMessages in one transaction. Each future is completed with the
+    message and its generated message_id only after that transaction has committed, so a caller that waits on its
+    future never acknowledges a message that is not durable.
+
+    - If a group fails as a whole, its messages are retried one by one, so a single bad row only fails its own caller.
+      A group that could not get a connection within the pool's acquire timeout fails at once instead.
+    - The queue is bounded by queueCapacity. When it is full, submit() fails immediately instead of letting callers
+      pile up behind the writer.
+ */
+
+public class GroupCommitWriter {
+
+    // How often an idle writer checks whether it has been shut down.
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final MessageDAO messageDAO;
+    private final int maxBatchSize;
+    private final long maxWaitMicros;
+    private final int queueCapacity;
+    private final BlockingQueue <PendingMessage> queue;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+
+    public GroupCommitWriter (MessageDAO messageDAO, int maxBatchSize, long maxWaitMicros, int queueCapacity){
+        if (maxBatchSize < 1 || maxWaitMicros < 0 || queueCapacity < 1){
+            throw new IllegalArgumentException("invalid group commit settings");
+        }
+        this.messageDAO = messageDAO;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMicros = maxWaitMicros;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.writerThread = new Thread(this::writeLoop, "message-group-commit-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+/******************************************Queue a message for the next group*******************************************/
+
+    public CompletableFuture <Message> submit (Message message){
+
+        PendingMessage pending = new PendingMessage(message);
+        if (!running || !queue.offer(pending)){
+            rejectedCount.incrementAndGet();
+            pending.future.completeExceptionally(new SQLException("The message write queue is full"));
+            return pending.future;
+        }
+        submittedCount.incrementAndGet();
+        return pending.future;
+    }
+
+/******************************************Stop the writer thread*******************************************/
+
+    /*
+     * Stops accepting messages, lets the writer finish the group it is writing and fails whatever is still queued.
+     */
+    public void shutdown (){
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PendingMessage pending;
+        while ((pending = queue.poll()) != null){
+            pending.future.completeExceptionally(new SQLException("The message writer has been shut down"));
+        }
+    }
+
+    public GroupCommitStats getStats (){
+        long batches = batchCount.get();
+        long written = writtenCount.get();
+        return new GroupCommitStats(maxBatchSize, maxWaitMicros, queueCapacity, queue.size(),
+            submittedCount.get(), rejectedCount.get(), written, failedCount.get(), batches,
+            batches == 0 ? 0 : (double) written / batches, largestBatch.get(),
+            batches == 0 ? 0 : totalCommitNanos.get() / batches / 1000);
+    }
+
+/******************************************Writer thread*******************************************/
+
+    private void writeLoop (){
+        List <PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running){
+            try {
+                // the writer is never interrupted, since an interrupt in the middle of a write can close H2's files,
+                // so it polls to notice shutdown instead of blocking in take()
+                PendingMessage first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null){
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+
+                while (batch.size() < maxBatchSize){
+                    // take whatever is already queued without waiting, then wait out the rest of the window
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0){
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0){
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null){
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // not expected, write what has been collected so far and keep going until shutdown
+            }
+
+            if (!batch.isEmpty()){
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write (List <PendingMessage> batch){
+        List <Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch){
+            messages.add(pending.message);
+        }
+
+        long start = System.nanoTime();
+        try {
+            List <Message> created = messageDAO.createNewMessages(messages);
+            totalCommitNanos.addAndGet(System.nanoTime() - start);
+            batchCount.incrementAndGet();
+            largestBatch.accumulateAndGet(batch.size(), Math::max);
+            writtenCount.addAndGet(created.size());
+            for (int i = 0; i < batch.size(); i++){
+                batch.get(i).future.complete(created.get(i));
+            }
+        } catch (SQLTransientConnectionException e) {
+            // no connection became free in time, and writing one by one would only wait for it again per message
+            failedCount.addAndGet(batch.size());
+            for (PendingMessage pending : batch){
+                pending.future.completeExceptionally(e);
+            }
+        } catch (SQLException | RuntimeException e) {
+            writeOneByOne(batch);
+        }
+    }
+
+    private void writeOneByOne (List <PendingMessage> batch){
+        for (PendingMessage pending : batch){
+            try {
+                Message created = messageDAO.CreateNewMessage(pending.message);
+                writtenCount.incrementAndGet();
+                pending.future.complete(created);
+            } catch (SQLException | RuntimeException e) {
+                failedCount.incrementAndGet();
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class PendingMessage {
+        private final Message message;
+        private final CompletableFuture <Message> future = new CompletableFuture<>();
+
+        PendingMessage (Message message){
+            this.message = message;
+        }
+    }
+}
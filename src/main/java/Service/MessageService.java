@@ -2,22 +2,73 @@ package Service;
 
 import java.sql.SQLException;
 
+import DAO.MessageCursor;
 import DAO.MessageDAO;
 import Model.Account;
+import Model.AuthoredMessage;
+import Model.BatchItemResult;
 import Model.Message;
+import Model.MessagePage;
+import Model.VersionedMessage;
+import Util.CacheStats;
+import Util.LruCache;
+import Util.SingleFlight;
+import Util.SingleFlightStats;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.security.sasl.AuthenticationException;
 
 public class MessageService {
 
+    // Largest page a client may ask for in a single paginated request.
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // Largest number of messages a client may create in a single batch request.
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    // Largest number of ids a client may look up in a single multi-get request.
+    public static final int MAX_MULTI_GET_SIZE = 100;
+
     private final MessageDAO messageDAO;
     private final AccountService accountService;
 
+    // Set when group commit is enabled; new messages are then written by its single writer thread in groups.
+    private volatile GroupCommitWriter groupCommitWriter;
+
+    // Set when soft delete is enabled; deletes then only mark rows and this compactor removes them later.
+    private volatile TombstoneCompactor tombstoneCompactor;
+
+    // Read-through cache of single messages by id, e.g. -Dmessages.cache.maxSize=50000 -Dmessages.cache.negativeTtlMillis=1000
+    // Entries carry the row version, so reads can hand it out for conditional updates.
+    private final LruCache <Integer, VersionedMessage> messageCache;
+
+    // Cached per-account timelines within a memory budget, e.g. -Dmessages.timelineCache.maxBytes=67108864
+    private final TimelineCache timelineCache;
+
+    // Concurrent identical reads that miss the caches share one database load.
+    private final SingleFlight <Integer, VersionedMessage> messageLoads = new SingleFlight<>();
+    private final SingleFlight <Integer, List <Message>> timelineLoads = new SingleFlight<>();
+    private final SingleFlight <String, List <Message>> allMessagesLoads = new SingleFlight<>();
+    private static final String ALL_MESSAGES = "all";
+    private static final String ALL_MESSAGES_WITH_AUTHORS = "allWithAuthors";
+
+    // Bumped after every message write, so listings can be tagged with a version and polled cheaply.
+    private final AtomicLong messagesVersion = new AtomicLong();
+    private final ConcurrentHashMap <Integer, AtomicLong> accountVersions = new ConcurrentHashMap<>();
+
     // Constructor to initialize MessageDAO and AccountService dependencies
     public MessageService (MessageDAO messageDAO, AccountService accountService){
         this.messageDAO = messageDAO;
         this.accountService = accountService;
+        this.messageCache = new LruCache<>(
+            Integer.getInteger("messages.cache.maxSize", 10000),
+            Long.getLong("messages.cache.negativeTtlMillis", 2000L));
+        this.timelineCache = new TimelineCache(Long.getLong("messages.timelineCache.maxBytes", 16L * 1024 * 1024));
     }
 
 /******************Create a new message by existing account using post request and save in the database *******************/
@@ -31,77 +82,467 @@ public class MessageService {
 
 public Message createNewMessage(Message message, Account account) throws SQLException, AuthenticationException{
 
-    // Retrieve all accounts to verify the user exists
-    List <Account> allAccounts = accountService.getAllAccounts();
-    boolean userExists  = false;
+    return awaitCreation(submitNewMessage(message, account));
+}
+
+/*Validates the message on the calling thread and returns a future of the created message, or of null if the text is
+ * invalid. Without group commit the message is inserted before this returns. With group commit the future completes on
+ * the writer thread once the group holding the message has committed, so no thread has to sit waiting for the group.
+*/
 
-    // Check if the account exists in the database
-    for (Account acc : allAccounts){
-        if (acc.getAccount_id() == message.getPosted_by()){
-            userExists = true;
-            break;
-        }
-    }
+public CompletableFuture <Message> submitNewMessage (Message message, Account account) throws SQLException, AuthenticationException{
+
+    // Check that the account exists, from memory for known accounts and with one primary key lookup otherwise
     // Throw an AuthenticationException if the user is not found
-    if (!userExists){
+    if (!accountService.accountExists(message.getPosted_by())){
         throw new AuthenticationException("");
 
     }
     // Validate message content (not blank and under 255 characters)
-    String messageContent = message.getMessage_text(); 
-    if (messageContent == null || messageContent.isBlank() || messageContent.length() > 255){
-        return null;
+    if (!isValidMessageText(message.getMessage_text())){
+        return CompletableFuture.completedFuture(null);
     }
     // Create and save the message if all validations pass
-    return messageDAO.CreateNewMessage(message);
+    GroupCommitWriter writer = groupCommitWriter;
+    if (writer == null){
+        return CompletableFuture.completedFuture(created(messageDAO.CreateNewMessage(message)));
+    }
+    return writer.submit(message).thenApply(this::created);
+}
+
+private Message created (Message createdMessage){
+
+    // the new row is current, so it goes straight into the cache and replaces a cached "not found" for its id
+    if (createdMessage != null){
+        forgetLoads(createdMessage);
+        messageCache.put(createdMessage.getMessage_id(), new VersionedMessage(createdMessage, 0));
+        timelineCache.added(createdMessage);
+        bumpVersions(createdMessage.getPosted_by());
+    }
+    return createdMessage;
+}
+
+/******************Group commit mode for new messages *******************/
+
+/*When group commit is enabled, submitNewMessage hands each validated message to a GroupCommitWriter, which inserts the
+ * messages of many concurrent callers in one transaction. The returned future completes only once the message has been
+ * committed, so a 200 response keeps meaning that the message is saved.
+*/
+
+public void enableGroupCommit (int maxBatchSize, long maxWaitMicros, int queueCapacity){
+    if (groupCommitWriter == null){
+        groupCommitWriter = new GroupCommitWriter(messageDAO, maxBatchSize, maxWaitMicros, queueCapacity);
+    }
+}
+
+// Returns null when group commit is not enabled.
+public GroupCommitStats getGroupCommitStats (){
+    GroupCommitWriter writer = groupCommitWriter;
+    return writer == null ? null : writer.getStats();
+}
+
+/******************Soft delete mode *******************/
+
+/*When soft delete is enabled, deleteMessageById marks the message as deleted instead of removing its row, and a
+ * TombstoneCompactor purges the marked rows in small batches in the background. Reads skip marked rows, so to clients a
+ * soft deleted message is gone at once.
+*/
+
+public void enableSoftDelete (long compactIntervalMillis, int batchSize, long batchPauseMillis, int maxBatchesPerRun){
+    if (tombstoneCompactor == null){
+        tombstoneCompactor = new TombstoneCompactor(messageDAO, compactIntervalMillis, batchSize, batchPauseMillis, maxBatchesPerRun);
+    }
+}
+
+// Returns null when soft delete is not enabled.
+public Map <String, Object> getTombstoneCompactorStats (){
+    TombstoneCompactor compactor = tombstoneCompactor;
+    return compactor == null ? null : compactor.getStats();
+}
+
+// Stops the background work owned by this service.
+public void shutdown (){
+    GroupCommitWriter writer = groupCommitWriter;
+    groupCommitWriter = null;
+    if (writer != null){
+        writer.shutdown();
+    }
+    TombstoneCompactor compactor = tombstoneCompactor;
+    tombstoneCompactor = null;
+    if (compactor != null){
+        compactor.shutdown();
+    }
+}
+
+private static Message awaitCreation (CompletableFuture <Message> creation) throws SQLException {
+    try {
+        return creation.get();
+    } catch (ExecutionException e) {
+        if (e.getCause() instanceof SQLException){
+            throw (SQLException) e.getCause();
+        }
+        throw new SQLException("Failed to write message", e.getCause());
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for the message to be written", e);
+    }
+}
+
+/******************Create many new messages in one batch using post request and save in the database *******************/
+
+/*Every message in the batch is validated with the same rules as createNewMessage, but instead of failing the whole
+ * request, each message gets its own result.
+    - each distinct posted_by is checked once for the whole batch rather than once per message.
+    - the valid messages are inserted together in one JDBC batch and one transaction by the DAO.
+    - the results come back in request order, carrying either the created message with its id or the rejection reason.
+*/
+
+public List <BatchItemResult> createNewMessages (List <Message> messages) throws SQLException {
+
+    if (messages.size() > MAX_BATCH_SIZE){
+        throw new IllegalArgumentException("a batch may contain at most " + MAX_BATCH_SIZE + " messages");
+    }
+
+    Map <Integer, Boolean> existingAccountIds = new HashMap<>();
+
+    BatchItemResult[] results = new BatchItemResult[messages.size()];
+    List <Message> validMessages = new ArrayList<>();
+    List <Integer> validIndexes = new ArrayList<>();
+
+    for (int i = 0; i < messages.size(); i++){
+        Message message = messages.get(i);
+        if (message == null){
+            results[i] = BatchItemResult.rejected(i, "message is missing");
+        }else if (!accountExists(existingAccountIds, message.getPosted_by())){
+            results[i] = BatchItemResult.rejected(i, "posted_by does not refer to an existing account");
+        }else if (!isValidMessageText(message.getMessage_text())){
+            results[i] = BatchItemResult.rejected(i, "message_text must not be blank or over 255 characters");
+        }else {
+            validMessages.add(message);
+            validIndexes.add(i);
+        }
+    }
+
+    List <Message> createdMessages = messageDAO.createNewMessages(validMessages);
+    for (int i = 0; i < createdMessages.size(); i++){
+        int index = validIndexes.get(i);
+        results[index] = BatchItemResult.created(index, createdMessages.get(i));
+        forgetLoads(createdMessages.get(i));
+        messageCache.put(createdMessages.get(i).getMessage_id(), new VersionedMessage(createdMessages.get(i), 0));
+        timelineCache.added(createdMessages.get(i));
+        bumpVersions(createdMessages.get(i).getPosted_by());
+    }
+    return Arrays.asList(results);
+}
+
+// Checks an account once per batch, remembering the answer in checked.
+private boolean accountExists (Map <Integer, Boolean> checked, int account_id) throws SQLException {
+    Boolean exists = checked.get(account_id);
+    if (exists == null){
+        exists = accountService.accountExists(account_id);
+        checked.put(account_id, exists);
+    }
+    return exists;
+}
+
+// A message must not be blank and must not be over 255 characters.
+private static boolean isValidMessageText (String messageContent){
+    return messageContent != null && !messageContent.isBlank() && messageContent.length() <= 255;
 }
 
 
 
 /************************************Retrieve all messages from a database service **************************************/
+/*Concurrent calls share one query, so the returned list is shared between them and cannot be modified.
+*/
 public List <Message> getAllMessages () throws SQLException{
 
     // Call DAO method to retrieve all messages
-    return messageDAO.getAllMessages();
+    return allMessagesLoads.load(ALL_MESSAGES, key -> Collections.unmodifiableList(messageDAO.getAllMessages()));
+}
+
+/*Like getAllMessages, but every message is an AuthoredMessage. The usernames come from a join in the same query rather
+ * than from the username cache, since the whole table can have far more authors than the cache holds.
+*/
+public List <Message> getAllMessagesWithAuthors () throws SQLException{
+
+    return allMessagesLoads.load(ALL_MESSAGES_WITH_AUTHORS,
+        key -> Collections.unmodifiableList(messageDAO.getAllMessagesWithAuthors()));
+}
+/************************************Stream all messages from a database service **************************************/
+
+/*Returns a forward-only cursor over every message for callers that need the whole table at once (exports, backfills).
+ * The caller owns the cursor and must close it to give its connection back to the pool.
+*/
+public MessageCursor openMessageCursor () throws SQLException{
+
+    return messageDAO.openMessageCursor();
 }
 /*******************************Retreive a message by message id from the database service class************************/
 
-public Message getMessageById (int message_id) throws SQLException{
+/*Served from the message cache when possible. A miss loads the row through the DAO, shared with any concurrent miss
+ * for the same id, and an id with no message is remembered for a short time, so repeated requests for missing ids do
+ * not all reach the database. Creating, updating and deleting messages through this service keeps the cache current.
+ * The returned message is shared with other callers and must not be modified.
+*/
+
+public VersionedMessage getVersionedMessageById (int message_id) throws SQLException{
 
-    // Call DAO to retrieve a specific message by ID
-    return messageDAO.getMessageById(message_id);
+    return messageCache.get(message_id, id -> messageLoads.load(id, messageDAO::getVersionedMessageById));
+}
+
+/*******************************Retreive many messages by their ids************************************************/
+
+/*Returns the messages with the given ids in the order the ids were given, skipping ids with no message and repeated
+ * ids. Cached messages are served from the message cache, and all of the misses are read with one query.
+ *      - more than MAX_MULTI_GET_SIZE ids throws an IllegalArgumentException which the controller turns into a 400.
+*/
+
+public List <Message> getMessagesByIds (List <Integer> message_ids) throws SQLException{
+
+    if (message_ids.size() > MAX_MULTI_GET_SIZE){
+        throw new IllegalArgumentException("at most " + MAX_MULTI_GET_SIZE + " ids can be requested at once");
+    }
+    Set <Integer> distinctIds = new LinkedHashSet<>(message_ids);
+    Map <Integer, VersionedMessage> found = messageCache.getAll(distinctIds, messageDAO::getMessagesByIds);
+
+    List <Message> messages = new ArrayList<>(found.size());
+    for (Integer message_id : distinctIds){
+        VersionedMessage versionedMessage = found.get(message_id);
+        if (versionedMessage != null){
+            messages.add(versionedMessage.getMessage());
+        }
+    }
+    return messages;
+}
+
+public CacheStats getMessageCacheStats (){
+    return messageCache.getStats();
+}
+
+/*******************************Add the authors' usernames to messages************************************************/
+
+/*Used by listings with expand=author. Copies every message into an AuthoredMessage with the username of its poster.
+ * The usernames of all distinct posters come from AccountService.getUsernames, i.e. the username cache and one query
+ * per 256 missing authors, never one lookup per message. Meant for pages, id lookups and single account timelines;
+ * the full listing uses getAllMessagesWithAuthors. The messages handed in are not modified, since they may be shared by a cache.
+*/
+
+public List <Message> withAuthors (List <Message> messages) throws SQLException{
+
+    Set <Integer> authorIds = new HashSet<>();
+    for (Message message : messages){
+        authorIds.add(message.getPosted_by());
+    }
+    Map <Integer, String> usernames = accountService.getUsernames(authorIds);
+
+    List <Message> authoredMessages = new ArrayList<>(messages.size());
+    for (Message message : messages){
+        authoredMessages.add(new AuthoredMessage(message, usernames.get(message.getPosted_by())));
+    }
+    return authoredMessages;
+}
+
+public MessagePage withAuthors (MessagePage page) throws SQLException{
+    return new MessagePage(withAuthors(page.getItems()), page.getNext_cursor());
 }
 /*********************************Method to validate the new message before update existing message***********************/
 
-    public Message updateMessageContent (int message_id, Message message) throws SQLException {
+/*The new text must not be empty and must be under 255 characters. The update is one statement that writes the text,
+ * bumps the row version and returns the updated row, so it costs a single round trip.
+ *      - with an expectedVersion, the row is only updated if it is still at that version. If it has moved on, a
+ *        VersionConflictException carries the current row so the caller can show it or retry against it.
+ *      - without one, the update always applies, atomically, to whatever the current row is.
+ *      - returns null if the text is invalid or the message does not exist.
+ * A cached copy of the message is patched with the updated row instead of being dropped, and so is the poster's cached
+ * timeline when the message cache confirms the row is the newest version; otherwise the timeline is dropped. A message
+ * that is not cached is not added, so an update racing with a delete cannot bring the row back.
+*/
+
+    public VersionedMessage updateMessageContent (int message_id, Message message, Long expectedVersion)
+            throws SQLException, VersionConflictException {
+
+        String messageText = message.getMessage_text();
+        if (messageText == null || messageText.isEmpty() || messageText.length() >= 255){
+            return null;
+        }
 
-        //check if the message exists by retrieving it from DAO.
-        Message updatedMessage = messageDAO.getMessageById(message_id);
+        VersionedMessage updatedMessage = messageDAO.updateMessageById(message_id, messageText, expectedVersion);
 
-        //if the message don't exist return null else update the message text and return updated message if it exists.
         if (updatedMessage == null){
+            // only a conditional update needs the second look, to tell a missing message from a stale version
+            VersionedMessage currentMessage = expectedVersion == null ? null : messageDAO.getVersionedMessageById(message_id);
+            if (currentMessage != null){
+                messageCache.replaceUnlessSuperseded(message_id, currentMessage, MessageService::isNewer);
+                throw new VersionConflictException(currentMessage);
+            }
             return null;
-        }else {
-            updatedMessage.setMessage_text(message.getMessage_text());
-            return updatedMessage;
         }
+
+        forgetLoads(updatedMessage.getMessage());
+        // The timeline is only patched when the message cache confirms that this version is the newest one seen, and
+        // both steps happen under the timeline cache's lock, so two updates that finish out of order cannot leave the
+        // older text in the timeline. Otherwise, i.e. when a later update got there first or the message is not cached
+        // (a delete that committed after this update may have just dropped it), the poster's timeline is dropped and
+        // reloaded on its next read.
+        synchronized (timelineCache){
+            if (messageCache.replaceUnlessSuperseded(message_id, updatedMessage, MessageService::isNewer)){
+                timelineCache.replaced(updatedMessage.getMessage());
+            }else{
+                timelineCache.invalidate(updatedMessage.getMessage().getPosted_by());
+            }
+        }
+        bumpVersions(updatedMessage.getMessage().getPosted_by());
+        return updatedMessage;
+    }
+
+    private static boolean isNewer (VersionedMessage cached, VersionedMessage candidate){
+        return cached.getVersion() > candidate.getVersion();
     }
 
 /************************************************************Delete a message by Id***************************************************/
 
     public Message deleteMessageById (int message_id) throws SQLException {
 
-        // Call DAO to delete the message by ID.
-        return messageDAO.deleteMessageById(message_id);
+        // Call DAO to delete, or only mark, the message by ID in one statement, then drop it from the cache.
+        Message deletedMessage = tombstoneCompactor == null
+            ? messageDAO.deleteMessageById(message_id)
+            : messageDAO.softDeleteMessageById(message_id, System.currentTimeMillis());
+        if (deletedMessage != null){
+            forgetLoads(deletedMessage);
+        }
+        messageCache.invalidate(message_id);
+        if (deletedMessage != null){
+            timelineCache.removed(deletedMessage);
+            bumpVersions(deletedMessage.getPosted_by());
+        }
+        return deletedMessage;
 
     }
 
 /**********************************Retrieve all the messages under a given account  ***************************************************/
 
+/*Served from the timeline cache, which loads an account's timeline through the DAO on first read (one load shared by
+ * all concurrent first readers) and keeps it current on every create, update and delete made through this service.
+ * The returned list cannot be modified.
+*/
+
     public List <Message> getAllMessagesUnderGivenAccount (int account_id) throws SQLException {
 
-        // Call DAO to retrieve all messages associated with the given account ID.
-        return messageDAO.getAllMessagesByAccount(account_id);
+        return timelineCache.get(account_id, id -> timelineLoads.load(id, messageDAO::getAllMessagesByAccount));
+    }
+
+    public TimelineCacheStats getTimelineCacheStats (){
+        return timelineCache.getStats();
+    }
+
+    // Deduplication counts of the shared loads, with the ten most shared keys of each.
+    public Map <String, SingleFlightStats> getSharedLoadStats (){
+        Map <String, SingleFlightStats> stats = new LinkedHashMap<>();
+        stats.put("messageById", messageLoads.getStats(10));
+        stats.put("accountTimeline", timelineLoads.getStats(10));
+        stats.put("allMessages", allMessagesLoads.getStats(10));
+        return stats;
+    }
+
+/**********************************Listing versions for conditional GETs***************************************************/
+
+/*Every create, update and delete made through this service bumps the version of the whole message listing and of the
+ * account that posted the message. The versions are bumped after the write, so a version read before a listing is
+ * loaded never labels data older than itself. Writes made behind this service's back are not seen.
+*/
+
+    public long getMessagesVersion (){
+        return messagesVersion.get();
+    }
+
+    public long getAccountMessagesVersion (int account_id){
+        AtomicLong version = accountVersions.get(account_id);
+        return version == null ? 0 : version.get();
+    }
+
+    private void bumpVersions (int account_id){
+        accountVersions.computeIfAbsent(account_id, id -> new AtomicLong()).incrementAndGet();
+        messagesVersion.incrementAndGet();
+    }
+
+    // Called after every write and before the caches and versions move on, so that no caller which misses a cache
+    // after the write, or reads the new listing version, can join a shared load that started before it, see SingleFlight.
+    private void forgetLoads (Message message){
+        messageLoads.forget(message.getMessage_id());
+        timelineLoads.forget(message.getPosted_by());
+        allMessagesLoads.forget(ALL_MESSAGES);
+        allMessagesLoads.forget(ALL_MESSAGES_WITH_AUTHORS);
+    }
+
+/**********************************Retrieve one page of messages using a cursor***************************************************/
+
+/*Paginated listings are ordered by time_posted_epoch and then message_id. The cursor handed to the client is the
+ * (time_posted_epoch, message_id) of the last message on the page, base64 encoded so clients treat it as opaque.
+ *      - a null cursor asks for the first page.
+ *      - one extra row is fetched to find out whether there is a next page without a count query.
+ *      - an invalid cursor or limit throws an IllegalArgumentException which the controller turns into a 400.
+*/
+
+    public MessagePage getMessagesPage (String cursor, int limit) throws SQLException {
+
+        validateLimit(limit);
+        long[] position = decodeCursor(cursor);
+
+        List <Message> messages = position == null
+            ? messageDAO.getMessagesPage(null, 0, limit + 1)
+            : messageDAO.getMessagesPage(position[0], (int) position[1], limit + 1);
+
+        return toPage(messages, limit);
+    }
+
+    public MessagePage getMessagesPageUnderGivenAccount (int account_id, String cursor, int limit) throws SQLException {
+
+        validateLimit(limit);
+        long[] position = decodeCursor(cursor);
+
+        List <Message> messages = position == null
+            ? messageDAO.getMessagesPageByAccount(account_id, null, 0, limit + 1)
+            : messageDAO.getMessagesPageByAccount(account_id, position[0], (int) position[1], limit + 1);
+
+        return toPage(messages, limit);
+    }
+
+    private static void validateLimit (int limit){
+        if (limit < 1 || limit > MAX_PAGE_SIZE){
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private static MessagePage toPage (List <Message> messages, int limit){
+        if (messages.size() <= limit){
+            return new MessagePage(messages, null);
+        }
+        List <Message> items = messages.subList(0, limit);
+        Message last = items.get(limit - 1);
+        return new MessagePage(items, encodeCursor(last.getTime_posted_epoch(), last.getMessage_id()));
+    }
+
+    private static String encodeCursor (long time_posted_epoch, int message_id){
+        String position = time_posted_epoch + ":" + message_id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns {time_posted_epoch, message_id}, or null for the first page.
+    private static long[] decodeCursor (String cursor){
+        if (cursor == null || cursor.isEmpty()){
+            return null;
+        }
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            return new long[] {
+                Long.parseLong(position.substring(0, separator)),
+                Integer.parseInt(position.substring(separator + 1))
+            };
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
     }
 
 }
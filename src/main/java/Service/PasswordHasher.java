@@ -0,0 +1,174 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import Util.LatencyRecorder;
+
+/*Salted password hashing with PBKDF2-HMAC-SHA256, run on its own bounded thread pool.
+
+    - Stored hashes look like pbkdf2-sha256$<iterations>$<salt>$<hash>, so the work factor can be raised later without
+      breaking existing hashes: each hash is verified with the iteration count it was created with.
+    - Anything stored without that prefix is a legacy plaintext password from before hashing was introduced. It can still
+      be verified, and needsRehash() tells the caller to replace it with a real hash.
+    - Hashing is deliberately slow, so it runs on a small dedicated pool instead of the Jetty request threads. The pool's
+      queue is bounded: during a login storm, requests beyond the queue are rejected at once rather than piling up and
+      starving the threads that serve reads.
+ */
+
+public class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final ThreadPoolExecutor executor;
+    private final SecureRandom random = new SecureRandom();
+
+    // Compared against when a username does not exist, so unknown users take as long as wrong passwords.
+    private final String dummyHash;
+
+    private final LatencyRecorder queueLatency = new LatencyRecorder();
+    private final LatencyRecorder hashLatency = new LatencyRecorder();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public PasswordHasher (int iterations, int threads, int queueCapacity){
+        if (iterations < 1 || threads < 1 || queueCapacity < 1){
+            throw new IllegalArgumentException("invalid password hasher settings");
+        }
+        this.iterations = iterations;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "password-hasher-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        // idle hashing threads go away, so an instance that never sees a login costs nothing
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.dummyHash = hashNow("not a real password");
+    }
+
+    // Settings come from accounts.password.iterations, accounts.password.threads and accounts.password.queueCapacity.
+    public static PasswordHasher fromSystemProperties (){
+        return new PasswordHasher(
+            Integer.getInteger("accounts.password.iterations", 210000),
+            Integer.getInteger("accounts.password.threads", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("accounts.password.queueCapacity", 256));
+    }
+
+/****************************************Hash and verify on the hashing pool****************************************/
+
+    public CompletableFuture <String> hash (String password){
+        return submit(() -> hashNow(password));
+    }
+
+    /*
+     * Completes with true if the password matches the stored hash, or the stored plaintext for legacy rows. A null stored
+     * value is checked against a dummy hash, so it costs the same and always completes with false.
+     */
+    public CompletableFuture <Boolean> verify (String password, String stored){
+        if (stored == null){
+            return submit(() -> {
+                verifyNow(password, dummyHash);
+                return false;
+            });
+        }
+        return submit(() -> verifyNow(password, stored));
+    }
+
+    // Hashes on the calling thread. Only meant for code that already runs on the hashing pool.
+    public String hashNow (String password){
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        return PREFIX + "$" + iterations + "$" + Base64.getEncoder().encodeToString(salt) + "$" + Base64.getEncoder().encodeToString(hash);
+    }
+
+    // True for legacy plaintext passwords and for hashes made with fewer iterations than currently configured.
+    public boolean needsRehash (String stored){
+        if (!isHashed(stored)){
+            return true;
+        }
+        return Integer.parseInt(stored.split("\\$")[1]) < iterations;
+    }
+
+    public static boolean isHashed (String stored){
+        return stored != null && stored.startsWith(PREFIX + "$");
+    }
+
+    public PasswordHasherStats getStats (){
+        return new PasswordHasherStats(iterations, executor.getMaximumPoolSize(), executor.getActiveCount(),
+            executor.getQueue().size(), executor.getQueue().size() + executor.getQueue().remainingCapacity(),
+            rejectedCount.get(), queueLatency.snapshot(), hashLatency.snapshot());
+    }
+
+    public void shutdown (){
+        executor.shutdown();
+    }
+
+    private boolean verifyNow (String password, String stored){
+        if (!isHashed(stored)){
+            // legacy plaintext row
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4){
+            return false;
+        }
+        byte[] salt = Base64.getDecoder().decode(parts[2]);
+        byte[] expected = Base64.getDecoder().decode(parts[3]);
+        byte[] actual = pbkdf2(password, salt, Integer.parseInt(parts[1]));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private <T> CompletableFuture <T> submit (Supplier <T> work){
+        long queuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                queueLatency.recordSince(queuedAt);
+                long start = System.nanoTime();
+                try {
+                    return work.get();
+                } finally {
+                    hashLatency.recordSince(start);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static byte[] pbkdf2 (String password, byte[] salt, int iterations){
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new CompletionException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
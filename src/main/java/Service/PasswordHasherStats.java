@@ -0,0 +1,80 @@
+package Service;
+
+import Util.LatencyRecorder.LatencySnapshot;
+
+/*A point-in-time snapshot of the PasswordHasher pool and its latencies. Getters are provided so that Jackson can
+ * render a snapshot as JSON.
+ */
+
+public class PasswordHasherStats {
+
+    private final int iterations;
+    private final int threads;
+    private final int activeThreads;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long rejectedCount;
+    private final LatencySnapshot queueWait;
+    private final LatencySnapshot hashTime;
+
+    public PasswordHasherStats (int iterations, int threads, int activeThreads, int queueDepth, int queueCapacity,
+            long rejectedCount, LatencySnapshot queueWait, LatencySnapshot hashTime){
+        this.iterations = iterations;
+        this.threads = threads;
+        this.activeThreads = activeThreads;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.rejectedCount = rejectedCount;
+        this.queueWait = queueWait;
+        this.hashTime = hashTime;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    // Hash and verify requests waiting for a hashing thread right now.
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    // Requests turned away because the queue was full.
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    // Time between a request being queued and a hashing thread picking it up.
+    public LatencySnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    // Time spent hashing or verifying once a thread has picked the request up.
+    public LatencySnapshot getHashTime() {
+        return hashTime;
+    }
+
+    @Override
+    public String toString() {
+        return "PasswordHasherStats{" +
+                "iterations=" + iterations +
+                ", threads=" + threads +
+                ", activeThreads=" + activeThreads +
+                ", queueDepth=" + queueDepth +
+                ", rejected=" + rejectedCount +
+                ", queueWait=" + queueWait +
+                ", hashTime=" + hashTime +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+package Service;
+
+/*A point-in-time snapshot of the SessionStore. Getters are provided so that Jackson can render a snapshot as JSON.
+ */
+
+public class SessionStats {
+
+    private final int activeSessions;
+    private final int maxSessions;
+    private final long ttlSeconds;
+    private final long createdCount;
+    private final long expiredCount;
+    private final long evictedCount;
+
+    public SessionStats (int activeSessions, int maxSessions, long ttlSeconds, long createdCount, long expiredCount,
+            long evictedCount){
+        this.activeSessions = activeSessions;
+        this.maxSessions = maxSessions;
+        this.ttlSeconds = ttlSeconds;
+        this.createdCount = createdCount;
+        this.expiredCount = expiredCount;
+        this.evictedCount = evictedCount;
+    }
+
+    // Sessions currently held, including expired ones that have not been swept out yet.
+    public int getActiveSessions() {
+        return activeSessions;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    // Sessions dropped before they expired because the store was full.
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionStats{" +
+                "active=" + activeSessions +
+                ", created=" + createdCount +
+                ", expired=" + expiredCount +
+                ", evicted=" + evictedCount +
+                '}';
+    }
+}
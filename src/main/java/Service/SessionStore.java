@@ -0,0 +1,127 @@
+package Service;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Model.Account;
+
+/*Login sessions, keyed by an opaque random token that /login hands to the client.
+
+    - Sessions live in a ConcurrentHashMap, so looking one up is a hash of the token and a lock-free read, and many
+      users can be logged in at once without sharing any state between requests.
+    - Every session expires ttlMillis after login. Expired sessions are dropped when they are looked up, and the oldest
+      ones are swept out whenever a new session is created.
+    - At most maxSessions are kept. Since every session has the same TTL, creation order is also expiry order, so when
+      the store is full the session closest to expiry is evicted first.
+    - Sessions only hold the account id and username, never the password.
+ */
+
+public class SessionStore {
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final long ttlMillis;
+    private final int maxSessions;
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap <String, Session> sessions = new ConcurrentHashMap<>();
+    // tokens in creation order, which is also expiry order
+    private final Queue <String> creationOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public SessionStore (long ttlMillis, int maxSessions){
+        if (ttlMillis < 1 || maxSessions < 1){
+            throw new IllegalArgumentException("invalid session store settings");
+        }
+        this.ttlMillis = ttlMillis;
+        this.maxSessions = maxSessions;
+    }
+
+/****************************************Create and look up sessions****************************************/
+
+    // Starts a session for the account and returns its token.
+    public String create (Account account){
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        long now = System.nanoTime();
+        sessions.put(token, new Session(new Account(account.getAccount_id(), account.getUsername(), null),
+            now + TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+        creationOrder.add(token);
+        createdCount.incrementAndGet();
+
+        sweep(now);
+        return token;
+    }
+
+    // Returns the logged-in account, or null if the token is unknown or its session has expired.
+    public Account lookup (String token){
+        if (token == null){
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null){
+            return null;
+        }
+        if (session.expiresAtNanos - System.nanoTime() < 0){
+            if (sessions.remove(token, session)){
+                expiredCount.incrementAndGet();
+            }
+            return null;
+        }
+        return session.account;
+    }
+
+    // Ends the session of the token, e.g. on logout. Unknown and expired tokens are ignored.
+    public void invalidate (String token){
+        if (token != null){
+            sessions.remove(token);
+        }
+    }
+
+    public SessionStats getStats (){
+        return new SessionStats(sessions.size(), maxSessions, TimeUnit.MILLISECONDS.toSeconds(ttlMillis),
+            createdCount.get(), expiredCount.get(), evictedCount.get());
+    }
+
+    // Drops expired sessions from the front of the queue, then evicts the oldest sessions while the store is over size.
+    private void sweep (long now){
+        String token;
+        while ((token = creationOrder.peek()) != null){
+            Session session = sessions.get(token);
+            boolean expired = session != null && session.expiresAtNanos - now < 0;
+            boolean overSize = sessions.size() > maxSessions;
+            if (session != null && !expired && !overSize){
+                return;
+            }
+            if (!creationOrder.remove(token)){
+                continue;   // another thread took it
+            }
+            if (session != null && sessions.remove(token, session)){
+                if (expired){
+                    expiredCount.incrementAndGet();
+                }else {
+                    evictedCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static class Session {
+        private final Account account;
+        private final long expiresAtNanos;
+
+        Session (Account account, long expiresAtNanos){
+            this.account = account;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
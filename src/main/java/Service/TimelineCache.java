@@ -0,0 +1,185 @@
+package Service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import Model.Message;
+import Util.CacheLoader;
+import Util.PendingLoads;
+
+/*Per-account timelines, i.e. the result of GET /accounts/{account_id}/messages, kept in memory between requests.
+
+    - A timeline is loaded from the database the first time its account is read, and after that it is kept up to date
+      by MessageService: new messages are inserted in order, deleted messages are removed and updated messages are
+      swapped in place, so a popular account is served without touching H2 no matter how often it posts.
+    - Timelines are immutable lists. A write builds a new list and swaps it in, so readers never see a half-patched
+      timeline and never need a lock while they serialize it.
+    - The cache holds at most maxBytes of estimated message data. When a load or a write pushes it over, the least
+      recently read accounts are evicted first. A single timeline larger than the whole budget is not cached.
+    - Like LruCache, a load that overlapped a write to its account does not store its result, so a timeline loaded
+      just before a post cannot replace the timeline that includes it. Writes to other accounts do not affect it.
+ */
+
+public class TimelineCache {
+
+    // Timelines are ordered like MessageDAO.getAllMessagesByAccount.
+    private static final Comparator <Message> TIMELINE_ORDER =
+        Comparator.comparingLong(Message::getTime_posted_epoch).thenComparingInt(Message::getMessage_id);
+
+    // Rough heap cost of a Message and its String, not counting the text itself.
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final LinkedHashMap <Integer, Timeline> timelines = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final PendingLoads <Integer> pendingLoads = new PendingLoads<>();
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long patchCount;
+
+    public TimelineCache (long maxBytes){
+        if (maxBytes < 1){
+            throw new IllegalArgumentException("invalid timeline cache budget");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+/****************************************Read a timeline****************************************/
+
+    // Returns the cached timeline of the account, or loads it. The returned list is shared and cannot be modified.
+    public List <Message> get (int account_id, CacheLoader <Integer, List <Message>> loader) throws SQLException {
+        long loadToken;
+        synchronized (this){
+            Timeline timeline = timelines.get(account_id);
+            if (timeline != null){
+                hitCount++;
+                return timeline.messages;
+            }
+            missCount++;
+            loadToken = pendingLoads.start(account_id);
+        }
+
+        List <Message> messages;
+        try {
+            messages = Collections.unmodifiableList(new ArrayList<>(loader.load(account_id)));
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this){
+                pendingLoads.finish(account_id, loadToken);
+            }
+            throw e;
+        }
+
+        synchronized (this){
+            if (pendingLoads.finish(account_id, loadToken)){
+                store(account_id, messages);
+            }
+        }
+        return messages;
+    }
+
+/****************************************Keep cached timelines current****************************************/
+
+    public synchronized void added (Message message){
+        pendingLoads.written(message.getPosted_by());
+        Timeline timeline = timelines.get(message.getPosted_by());
+        if (timeline == null){
+            return;
+        }
+        List <Message> messages = new ArrayList<>(timeline.messages.size() + 1);
+        messages.addAll(timeline.messages);
+        int position = Collections.binarySearch(messages, message, TIMELINE_ORDER);
+        messages.add(position < 0 ? -position - 1 : position, message);
+        patch(message.getPosted_by(), messages);
+    }
+
+    public synchronized void removed (Message message){
+        pendingLoads.written(message.getPosted_by());
+        Timeline timeline = timelines.get(message.getPosted_by());
+        if (timeline == null){
+            return;
+        }
+        List <Message> messages = new ArrayList<>(timeline.messages);
+        messages.removeIf(existing -> existing.getMessage_id() == message.getMessage_id());
+        patch(message.getPosted_by(), messages);
+    }
+
+    public synchronized void replaced (Message message){
+        pendingLoads.written(message.getPosted_by());
+        Timeline timeline = timelines.get(message.getPosted_by());
+        if (timeline == null){
+            return;
+        }
+        List <Message> messages = new ArrayList<>(timeline.messages);
+        messages.replaceAll(existing -> existing.getMessage_id() == message.getMessage_id() ? message : existing);
+        patch(message.getPosted_by(), messages);
+    }
+
+    public synchronized void invalidate (int account_id){
+        pendingLoads.written(account_id);
+        Timeline timeline = timelines.remove(account_id);
+        if (timeline != null){
+            totalBytes -= timeline.bytes;
+        }
+    }
+
+    public synchronized TimelineCacheStats getStats (){
+        int messageCount = 0;
+        for (Timeline timeline : timelines.values()){
+            messageCount += timeline.messages.size();
+        }
+        return new TimelineCacheStats(timelines.size(), messageCount, totalBytes, maxBytes, hitCount, missCount,
+            evictionCount, patchCount);
+    }
+
+    private void patch (int account_id, List <Message> messages){
+        patchCount++;
+        store(account_id, Collections.unmodifiableList(messages));
+    }
+
+    private void store (int account_id, List <Message> messages){
+        Timeline previous = timelines.remove(account_id);
+        if (previous != null){
+            totalBytes -= previous.bytes;
+        }
+        Timeline timeline = new Timeline(messages);
+        if (timeline.bytes > maxBytes){
+            return;
+        }
+        timelines.put(account_id, timeline);
+        totalBytes += timeline.bytes;
+
+        Iterator <Map.Entry <Integer, Timeline>> eldest = timelines.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()){
+            Map.Entry <Integer, Timeline> entry = eldest.next();
+            if (entry.getKey() == account_id){
+                continue;
+            }
+            totalBytes -= entry.getValue().bytes;
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    private static final class Timeline {
+        private final List <Message> messages;
+        private final long bytes;
+
+        Timeline (List <Message> messages){
+            this.messages = messages;
+            long estimate = 64;
+            for (Message message : messages){
+                String text = message.getMessage_text();
+                estimate += MESSAGE_OVERHEAD_BYTES + (text == null ? 0 : text.length());
+            }
+            this.bytes = estimate;
+        }
+    }
+}
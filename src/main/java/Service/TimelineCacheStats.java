@@ -0,0 +1,81 @@
+package Service;
+
+/*A point-in-time snapshot of the TimelineCache. Getters are provided so that Jackson can render a snapshot as JSON.
+ */
+
+public class TimelineCacheStats {
+
+    private final int accountCount;
+    private final int messageCount;
+    private final long estimatedBytes;
+    private final long maxBytes;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long patchCount;
+
+    public TimelineCacheStats (int accountCount, int messageCount, long estimatedBytes, long maxBytes, long hitCount,
+            long missCount, long evictionCount, long patchCount){
+        this.accountCount = accountCount;
+        this.messageCount = messageCount;
+        this.estimatedBytes = estimatedBytes;
+        this.maxBytes = maxBytes;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.patchCount = patchCount;
+    }
+
+    // Accounts whose timeline is cached.
+    public int getAccountCount() {
+        return accountCount;
+    }
+
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    // Timelines dropped to stay within maxBytes.
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    // Cached timelines updated in place by a create, update or delete.
+    public long getPatchCount() {
+        return patchCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TimelineCacheStats{" +
+                "accounts=" + accountCount +
+                ", messages=" + messageCount +
+                ", estimatedBytes=" + estimatedBytes +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                ", evictions=" + evictionCount +
+                ", patches=" + patchCount +
+                '}';
+    }
+}
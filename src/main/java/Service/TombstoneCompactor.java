@@ -0,0 +1,111 @@
+package Service;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import DAO.MessageDAO;
+
+/*Physically deletes soft deleted messages in the background.
+
+    Soft deleting a message only marks its row, which is a cheap single-row update even during a burst of deletes. Every
+    intervalMillis this compactor removes the marked rows with short DELETE statements of at most batchSize rows each,
+    pausing batchPauseMillis between them, so the purge never holds the message table for long and reads in between
+    are not stuck behind one large delete. A run stops after maxBatchesPerRun batches and leaves the rest to the next.
+
+    - Only rows marked before the run started are purged.
+    - The compactor thread is never interrupted, since an interrupt in the middle of a write can close H2's files;
+      shutdown() lets the current batch finish instead.
+ */
+
+public class TombstoneCompactor {
+
+    private final MessageDAO messageDAO;
+    private final long intervalMillis;
+    private final int batchSize;
+    private final long batchPauseMillis;
+    private final int maxBatchesPerRun;
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean running = true;
+
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong failedRunCount = new AtomicLong();
+    private final AtomicLong purgedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private volatile long lastRunPurged;
+    private volatile long lastRunMillis;
+
+    public TombstoneCompactor (MessageDAO messageDAO, long intervalMillis, int batchSize, long batchPauseMillis, int maxBatchesPerRun){
+        if (intervalMillis < 1 || batchSize < 1 || batchPauseMillis < 0 || maxBatchesPerRun < 1){
+            throw new IllegalArgumentException("invalid tombstone compactor settings");
+        }
+        this.messageDAO = messageDAO;
+        this.intervalMillis = intervalMillis;
+        this.batchSize = batchSize;
+        this.batchPauseMillis = batchPauseMillis;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-tombstone-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::compact, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Purges tombstones in batches until none are left, the run's batch budget is used up or the compactor is stopped.
+    private void compact (){
+        long start = System.nanoTime();
+        long deletedBefore = System.currentTimeMillis();
+        long purged = 0;
+        try {
+            for (int batch = 0; batch < maxBatchesPerRun && running; batch++){
+                int deleted = messageDAO.purgeDeletedMessages(deletedBefore, batchSize);
+                purged += deleted;
+                purgedCount.addAndGet(deleted);
+                batchCount.incrementAndGet();
+                if (deleted < batchSize){
+                    break;
+                }
+                Thread.sleep(batchPauseMillis);
+            }
+        } catch (SQLException e) {
+            // the tombstones stay hidden from reads, the next run tries again
+            failedRunCount.incrementAndGet();
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            runCount.incrementAndGet();
+            lastRunPurged = purged;
+            lastRunMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+
+    public void shutdown (){
+        running = false;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Map <String, Object> getStats (){
+        Map <String, Object> stats = new LinkedHashMap<>();
+        stats.put("intervalMillis", intervalMillis);
+        stats.put("batchSize", batchSize);
+        stats.put("runCount", runCount.get());
+        stats.put("failedRunCount", failedRunCount.get());
+        stats.put("batchCount", batchCount.get());
+        stats.put("purgedCount", purgedCount.get());
+        stats.put("lastRunPurged", lastRunPurged);
+        stats.put("lastRunMillis", lastRunMillis);
+        return stats;
+    }
+}
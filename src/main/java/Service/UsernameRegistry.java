@@ -0,0 +1,46 @@
+package Service;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*An in-memory set of every taken username, used to turn away duplicate registrations without a database round trip.
+
+    - The set is filled once at startup from the account table and then kept in step by AccountService.
+    - reserve() claims a username atomically, so two concurrent registrations for the same name cannot both get past
+      the registry; release() gives the name back when the insert that followed did not happen.
+    - The database unique constraint stays the source of truth. The registry only saves work on names it already knows,
+      so an account created outside this instance is still caught by the insert.
+ */
+
+public class UsernameRegistry {
+
+    private final Set <String> usernames = ConcurrentHashMap.newKeySet();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public void addAll (Collection <String> existingUsernames){
+        usernames.addAll(existingUsernames);
+    }
+
+    // Returns false, without touching the database, if the username is already taken.
+    public boolean reserve (String username){
+        if (usernames.add(username)){
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    public void release (String username){
+        usernames.remove(username);
+    }
+
+    public int size (){
+        return usernames.size();
+    }
+
+    public long getRejectedCount (){
+        return rejectedCount.get();
+    }
+}
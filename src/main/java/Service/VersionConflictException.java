@@ -0,0 +1,23 @@
+package Service;
+
+import Model.VersionedMessage;
+
+/*Thrown by a conditional update when the message has been changed since the version the client based its update on.
+ * Carries the current row, so the controller can answer with it and its version.
+ */
+
+public class VersionConflictException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final VersionedMessage currentMessage;
+
+    public VersionConflictException (VersionedMessage currentMessage){
+        super("message " + currentMessage.getMessage().getMessage_id() + " is at version " + currentMessage.getVersion());
+        this.currentMessage = currentMessage;
+    }
+
+    public VersionedMessage getCurrentMessage (){
+        return currentMessage;
+    }
+}
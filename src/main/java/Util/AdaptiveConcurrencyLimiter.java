@@ -0,0 +1,115 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how many requests are in flight at once, and adjusts that limit from the latency it observes (AIMD).
+ *
+ * Every completed request is a sample. A sample slower than the target latency, or one that was dropped further down,
+ * e.g. by a full executor queue, cuts the limit by the backoff ratio, at most once per target latency so one slow burst
+ * is not punished many times over. Every other sample raises the limit by 1/limit, i.e. by about one per limit's worth
+ * of requests, but only while the limit is actually in use.
+ *
+ * Requests over the limit are not queued: {@link #tryAcquire(Priority)} returns false at once and the caller sheds the
+ * request. {@link Priority#LOW} requests may only use a share of the limit, so when the limit shrinks they are shed
+ * before {@link Priority#HIGH} ones.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	public enum Priority {
+		HIGH, LOW
+	}
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long targetLatencyNanos;
+	private final double backoffRatio;
+	private final double lowPriorityShare;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong admittedCount = new AtomicLong();
+	private final AtomicLong highRejectedCount = new AtomicLong();
+	private final AtomicLong lowRejectedCount = new AtomicLong();
+	private final LatencyRecorder queueingDelay = new LatencyRecorder();
+	private final LatencyRecorder latency = new LatencyRecorder();
+
+	/**
+	 * Guarded by this. Read without the lock by tryAcquire, hence volatile.
+	 */
+	private volatile double limit;
+	private long lastDecreaseNanos;
+
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatencyMillis,
+			double backoffRatio, double lowPriorityShare) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit
+				|| targetLatencyMillis < 1 || backoffRatio <= 0 || backoffRatio >= 1
+				|| lowPriorityShare <= 0 || lowPriorityShare > 1) {
+			throw new IllegalArgumentException("invalid concurrency limiter settings");
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+		this.backoffRatio = backoffRatio;
+		this.lowPriorityShare = lowPriorityShare;
+		this.lastDecreaseNanos = System.nanoTime() - targetLatencyNanos;
+	}
+
+	/**
+	 * Takes a slot if the request's priority still has room under the current limit. Every true must be followed by
+	 * exactly one {@link #release(long, boolean)}.
+	 */
+	public boolean tryAcquire(Priority priority) {
+		double current = limit;
+		int allowed = (int) (priority == Priority.HIGH ? current : Math.max(1, current * lowPriorityShare));
+		while (true) {
+			int taken = inFlight.get();
+			if (taken >= allowed) {
+				(priority == Priority.HIGH ? highRejectedCount : lowRejectedCount).incrementAndGet();
+				return false;
+			}
+			if (inFlight.compareAndSet(taken, taken + 1)) {
+				admittedCount.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives the slot back and feeds the request's latency into the limit.
+	 *
+	 * @param latencyNanos time from the request's arrival to its completion, queueing included
+	 * @param dropped      true if the request was turned away after admission because something downstream was full
+	 */
+	public void release(long latencyNanos, boolean dropped) {
+		int taken = inFlight.getAndDecrement();
+		latency.record(latencyNanos);
+
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (dropped || latencyNanos > targetLatencyNanos) {
+				if (now - lastDecreaseNanos >= targetLatencyNanos) {
+					limit = Math.max(minLimit, limit * backoffRatio);
+					lastDecreaseNanos = now;
+				}
+			} else if (taken * 2 >= limit) {
+				// growing an unused limit would only let the next burst through unchecked
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+		}
+	}
+
+	/**
+	 * Records how long a request waited to be picked up before it reached the limiter.
+	 */
+	public void recordQueueingDelay(long nanos) {
+		queueingDelay.record(nanos);
+	}
+
+	public LimiterStats getStats() {
+		return new LimiterStats((int) limit, minLimit, maxLimit, inFlight.get(), admittedCount.get(),
+				highRejectedCount.get(), lowRejectedCount.get(), queueingDelay.snapshot(), latency.snapshot());
+	}
+}
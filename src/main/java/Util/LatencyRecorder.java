@@ -0,0 +1,119 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long an operation takes, cheaply enough to sit on every request.
+ *
+ * Durations are counted in power-of-two microsecond buckets, so recording is a handful of atomic increments and no
+ * allocation, and percentiles are approximate: the reported value is the upper bound of the bucket the percentile
+ * falls into, i.e. at most twice the real value.
+ */
+public class LatencyRecorder {
+
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * @param startNanos a value of System.nanoTime() taken when the operation started
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public LatencySnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		long recorded = count.get();
+		return new LatencySnapshot(recorded,
+				recorded == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / recorded),
+				percentile(counts, total, 0.50),
+				percentile(counts, total, 0.99),
+				TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+	}
+
+	private static long percentile(long[] counts, long total, double percentile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				// bucket i holds durations below 2^i microseconds
+				return i == 0 ? 0 : 1L << i;
+			}
+		}
+		return 1L << (counts.length - 1);
+	}
+
+	/**
+	 * An immutable view of a LatencyRecorder, in microseconds. Getters are provided so that Jackson can render it.
+	 */
+	public static class LatencySnapshot {
+		private final long count;
+		private final long meanMicros;
+		private final long p50Micros;
+		private final long p99Micros;
+		private final long maxMicros;
+
+		public LatencySnapshot(long count, long meanMicros, long p50Micros, long p99Micros, long maxMicros) {
+			this.count = count;
+			this.meanMicros = meanMicros;
+			this.p50Micros = p50Micros;
+			this.p99Micros = p99Micros;
+			this.maxMicros = maxMicros;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMeanMicros() {
+			return meanMicros;
+		}
+
+		public long getP50Micros() {
+			return p50Micros;
+		}
+
+		public long getP99Micros() {
+			return p99Micros;
+		}
+
+		public long getMaxMicros() {
+			return maxMicros;
+		}
+
+		@Override
+		public String toString() {
+			return "LatencySnapshot{" +
+					"count=" + count +
+					", meanMicros=" + meanMicros +
+					", p50Micros=" + p50Micros +
+					", p99Micros=" + p99Micros +
+					", maxMicros=" + maxMicros +
+					'}';
+		}
+	}
+}
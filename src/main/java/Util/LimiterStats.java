@@ -0,0 +1,91 @@
+package Util;
+
+import Util.LatencyRecorder.LatencySnapshot;
+
+/**
+ * An immutable snapshot of the {@link AdaptiveConcurrencyLimiter} counters. Getters are provided so that Jackson can
+ * render a snapshot as JSON.
+ */
+public class LimiterStats {
+	private final int limit;
+	private final int minLimit;
+	private final int maxLimit;
+	private final int inFlight;
+	private final long admittedCount;
+	private final long highPriorityRejectedCount;
+	private final long lowPriorityRejectedCount;
+	private final LatencySnapshot queueingDelay;
+	private final LatencySnapshot latency;
+
+	public LimiterStats(int limit, int minLimit, int maxLimit, int inFlight, long admittedCount,
+			long highPriorityRejectedCount, long lowPriorityRejectedCount, LatencySnapshot queueingDelay,
+			LatencySnapshot latency) {
+		this.limit = limit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.inFlight = inFlight;
+		this.admittedCount = admittedCount;
+		this.highPriorityRejectedCount = highPriorityRejectedCount;
+		this.lowPriorityRejectedCount = lowPriorityRejectedCount;
+		this.queueingDelay = queueingDelay;
+		this.latency = latency;
+	}
+
+	/**
+	 * The current in-flight limit, rounded down.
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	public long getAdmittedCount() {
+		return admittedCount;
+	}
+
+	public long getHighPriorityRejectedCount() {
+		return highPriorityRejectedCount;
+	}
+
+	public long getLowPriorityRejectedCount() {
+		return lowPriorityRejectedCount;
+	}
+
+	/**
+	 * Time requests spent waiting for a server thread before they reached the limiter.
+	 */
+	public LatencySnapshot getQueueingDelay() {
+		return queueingDelay;
+	}
+
+	/**
+	 * Time from arrival to completion of admitted requests, the latency the limit is adjusted by.
+	 */
+	public LatencySnapshot getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		return "LimiterStats{" +
+				"limit=" + limit +
+				", inFlight=" + inFlight +
+				", admitted=" + admittedCount +
+				", highPriorityRejected=" + highPriorityRejectedCount +
+				", lowPriorityRejected=" + lowPriorityRejectedCount +
+				", queueingDelay=" + queueingDelay +
+				", latency=" + latency +
+				'}';
+	}
+}
@@ -0,0 +1,225 @@
+package Util;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+/**
+ * A size-bounded, read-through cache that evicts the least recently used entry.
+ *
+ * <ul>
+ * <li>{@link #get(Object, CacheLoader)} returns the cached value or loads it. The lock is only held to look up and to
+ * store, never while the loader runs, so a slow query does not block hits on other keys.</li>
+ * <li>{@link #getAll(Collection, BulkCacheLoader)} does the same for many keys, and loads all of the missing ones with
+ * a single call to the loader.</li>
+ * <li>A load that finds nothing is cached as a negative entry for negativeTtlMillis, so repeated lookups of an id that
+ * does not exist do not all reach the database.</li>
+ * <li>Writers call {@link #put(Object, Object)}, {@link #replaceUnlessSuperseded(Object, Object, BiPredicate)} or
+ * {@link #invalidate(Object)}. A load that was in progress while its key was written does not store its result, so a
+ * load racing with a write can never put the old row back into the cache. Writes to other keys do not affect it.</li>
+ * </ul>
+ *
+ * Cached values are shared between callers and must not be modified.
+ */
+public class LruCache<K, V> {
+
+	// Marks a cached "no such key".
+	private static final Object ABSENT = new Object();
+
+	private final int maxSize;
+	private final long negativeTtlNanos;
+	private final LinkedHashMap<K, Entry> entries;
+	private final PendingLoads<K> pendingLoads = new PendingLoads<>();
+
+	private long hitCount;
+	private long negativeHitCount;
+	private long missCount;
+	private long evictionCount;
+	private final LatencyRecorder loadLatency = new LatencyRecorder();
+
+	public LruCache(int maxSize, long negativeTtlMillis) {
+		if (maxSize < 1 || negativeTtlMillis < 0) {
+			throw new IllegalArgumentException("invalid cache settings");
+		}
+		this.maxSize = maxSize;
+		this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(K key, CacheLoader<K, V> loader) throws SQLException {
+		long loadToken;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				if (entry.value != ABSENT) {
+					hitCount++;
+					return (V) entry.value;
+				}
+				if (entry.expiresAtNanos - System.nanoTime() > 0) {
+					negativeHitCount++;
+					return null;
+				}
+				entries.remove(key);
+			}
+			missCount++;
+			loadToken = pendingLoads.start(key);
+		}
+
+		long start = System.nanoTime();
+		V value;
+		try {
+			value = loader.load(key);
+		} catch (SQLException | RuntimeException e) {
+			synchronized (this) {
+				pendingLoads.finish(key, loadToken);
+			}
+			throw e;
+		}
+		loadLatency.recordSince(start);
+
+		synchronized (this) {
+			if (pendingLoads.finish(key, loadToken)) {
+				store(key, value == null ? ABSENT : value);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the values of the given keys that have one, cached or loaded. Keys cached as having no value are not
+	 * loaded again, and all other missing keys go to the loader together.
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<K, V> getAll(Collection<K> keys, BulkCacheLoader<K, V> loader) throws SQLException {
+		Map<K, V> values = new HashMap<>();
+		List<K> missing = new ArrayList<>();
+		List<Long> loadTokens = new ArrayList<>();
+		synchronized (this) {
+			long now = System.nanoTime();
+			for (K key : keys) {
+				Entry entry = entries.get(key);
+				if (entry != null) {
+					if (entry.value != ABSENT) {
+						hitCount++;
+						values.put(key, (V) entry.value);
+						continue;
+					}
+					if (entry.expiresAtNanos - now > 0) {
+						negativeHitCount++;
+						continue;
+					}
+					entries.remove(key);
+				}
+				missCount++;
+				missing.add(key);
+				loadTokens.add(pendingLoads.start(key));
+			}
+		}
+		if (missing.isEmpty()) {
+			return values;
+		}
+
+		long start = System.nanoTime();
+		Map<K, V> loaded;
+		try {
+			loaded = loader.load(missing);
+		} catch (SQLException | RuntimeException e) {
+			synchronized (this) {
+				for (int i = 0; i < missing.size(); i++) {
+					pendingLoads.finish(missing.get(i), loadTokens.get(i));
+				}
+			}
+			throw e;
+		}
+		loadLatency.recordSince(start);
+
+		synchronized (this) {
+			for (int i = 0; i < missing.size(); i++) {
+				K key = missing.get(i);
+				if (pendingLoads.finish(key, loadTokens.get(i))) {
+					V value = loaded.get(key);
+					store(key, value == null ? ABSENT : value);
+				}
+			}
+		}
+		values.putAll(loaded);
+		return values;
+	}
+
+	/**
+	 * Stores a value the caller knows to be current, e.g. a row it has just written.
+	 */
+	public synchronized void put(K key, V value) {
+		pendingLoads.written(key);
+		store(key, value);
+	}
+
+	/**
+	 * Patches the cached value of a key with a newer one the caller has just written, unless the cached value
+	 * supersedes it, e.g. a newer version of the same row stored by a concurrent writer that finished first.
+	 *
+	 * Nothing is stored for a key that is not cached, or cached as having no value: the entry may have been invalidated
+	 * by a concurrent delete of the row, which must not be undone. Like every write, the call still marks the key as
+	 * written, so a load that overlapped it does not store the old value.
+	 *
+	 * @return true if the cached value was replaced, false if the key is not cached or its cached value supersedes the
+	 *         new one
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized boolean replaceUnlessSuperseded(K key, V value, BiPredicate<V, V> supersedes) {
+		pendingLoads.written(key);
+		Entry entry = entries.get(key);
+		if (entry == null || entry.value == ABSENT || supersedes.test((V) entry.value, value)) {
+			return false;
+		}
+		store(key, value);
+		return true;
+	}
+
+	public synchronized void invalidate(K key) {
+		pendingLoads.written(key);
+		entries.remove(key);
+	}
+
+	public synchronized void clear() {
+		pendingLoads.writtenAll();
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized CacheStats getStats() {
+		return new CacheStats(entries.size(), maxSize, hitCount, negativeHitCount, missCount, evictionCount,
+				loadLatency.snapshot());
+	}
+
+	private void store(K key, Object value) {
+		entries.put(key, new Entry(value, value == ABSENT ? System.nanoTime() + negativeTtlNanos : 0));
+		if (entries.size() > maxSize) {
+			Iterator<Map.Entry<K, Entry>> eldest = entries.entrySet().iterator();
+			eldest.next();
+			eldest.remove();
+			evictionCount++;
+		}
+	}
+
+	private static final class Entry {
+		private final Object value;
+		private final long expiresAtNanos;
+
+		Entry(Object value, long expiresAtNanos) {
+			this.value = value;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+	}
+}
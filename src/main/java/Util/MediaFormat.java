@@ -0,0 +1,84 @@
+package Util;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+/**
+ * The body formats the API speaks. JSON is the default; Smile and CBOR are binary encodings of the same data model,
+ * handled by Jackson with the same mapping of Model.Message and Model.Account, for clients that ask for them through
+ * Accept or send them with Content-Type.
+ *
+ * Like {@link SharedJsonMapper}, each format builds one ObjectReader and ObjectWriter per type and reuses them.
+ */
+public enum MediaFormat {
+
+	JSON("application/json", SharedJsonMapper.get().getObjectMapper()),
+	SMILE("application/x-jackson-smile", new SmileMapper()),
+	CBOR("application/cbor", new CBORMapper());
+
+	private final String mediaType;
+	private final ObjectMapper mapper;
+	private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+	MediaFormat(String mediaType, ObjectMapper mapper) {
+		this.mediaType = mediaType;
+		this.mapper = mapper;
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Picks the first format listed in an Accept header that this API speaks, or JSON if there is none. Quality values
+	 * are not weighed; clients that want a binary format list it first.
+	 */
+	public static MediaFormat fromAccept(String accept) {
+		if (accept == null) {
+			return JSON;
+		}
+		for (String range : accept.split(",")) {
+			MediaFormat format = fromMediaType(range);
+			if (format != null) {
+				return format;
+			}
+		}
+		return JSON;
+	}
+
+	/**
+	 * The format of a request body, JSON unless Content-Type names one of the binary formats.
+	 */
+	public static MediaFormat fromContentType(String contentType) {
+		MediaFormat format = contentType == null ? null : fromMediaType(contentType);
+		return format == null ? JSON : format;
+	}
+
+	private static MediaFormat fromMediaType(String value) {
+		int parameters = value.indexOf(';');
+		String mediaType = (parameters < 0 ? value : value.substring(0, parameters)).trim();
+		for (MediaFormat format : values()) {
+			if (format.mediaType.equalsIgnoreCase(mediaType)) {
+				return format;
+			}
+		}
+		return null;
+	}
+
+	public byte[] write(Object value) throws JsonProcessingException {
+		return writers.computeIfAbsent(value.getClass(), mapper::writerFor).writeValueAsBytes(value);
+	}
+
+	public <T> T read(byte[] body, Type type) throws IOException {
+		return readers.computeIfAbsent(type, t -> mapper.readerFor(mapper.constructType(t))).readValue(body);
+	}
+}
@@ -0,0 +1,72 @@
+package Util;
+
+import java.util.HashMap;
+
+/**
+ * Counts the writes made to each key while a load of that key is in progress, so a cache can tell whether a load that
+ * just finished may store its result: only if the key it loaded was not written in the meantime. Writes to other keys
+ * do not matter, so one busy key never keeps the others from being cached.
+ *
+ * Only keys with a load in progress are tracked, and a key is dropped once its last load finishes, so the memory used
+ * is bounded by the number of concurrent loads.
+ *
+ * Not thread safe. The owning cache calls every method while holding its own lock.
+ */
+public class PendingLoads<K> {
+
+	private final HashMap<K, Pending> pending = new HashMap<>();
+
+	/**
+	 * Registers a load of the key that is about to start. Every call must be followed by exactly one
+	 * {@link #finish(Object, long)} for the same key, also when the load fails.
+	 *
+	 * @return the token to hand to finish
+	 */
+	public long start(K key) {
+		Pending loads = pending.computeIfAbsent(key, k -> new Pending());
+		loads.count++;
+		return loads.writes;
+	}
+
+	/**
+	 * Records a write to the key, which makes every load of it that is in progress stale.
+	 */
+	public void written(K key) {
+		Pending loads = pending.get(key);
+		if (loads != null) {
+			loads.writes++;
+		}
+	}
+
+	/**
+	 * Records a write to every key, e.g. when the whole cache is cleared.
+	 */
+	public void writtenAll() {
+		for (Pending loads : pending.values()) {
+			loads.writes++;
+		}
+	}
+
+	/**
+	 * Ends a load started with {@link #start(Object)}.
+	 *
+	 * @return true if the key was not written while the load ran, i.e. its result may be stored
+	 */
+	public boolean finish(K key, long token) {
+		Pending loads = pending.get(key);
+		boolean current = loads.writes == token;
+		if (--loads.count == 0) {
+			pending.remove(key);
+		}
+		return current;
+	}
+
+	public int size() {
+		return pending.size();
+	}
+
+	private static final class Pending {
+		private int count;
+		private long writes;
+	}
+}
@@ -0,0 +1,144 @@
+package Util;
+
+/**
+ * An immutable snapshot of the {@link ConnectionPool} counters. Getters are provided so that Jackson can render a
+ * snapshot as JSON.
+ */
+public class PoolStats {
+	private final int minSize;
+	private final int maxSize;
+	private final int totalConnections;
+	private final int idleConnections;
+	private final int activeConnections;
+	private final int waitingThreads;
+	private final long acquiredCount;
+	private final long createdCount;
+	private final long closedCount;
+	private final long timeoutCount;
+	private final long leakCount;
+	private final long averageWaitMicros;
+	private final long statementCacheHits;
+	private final long statementCacheMisses;
+	private final long statementCacheEvictions;
+
+	public PoolStats(int minSize, int maxSize, int totalConnections, int idleConnections, int activeConnections,
+			int waitingThreads, long acquiredCount, long createdCount, long closedCount, long timeoutCount,
+			long leakCount, long averageWaitMicros, long statementCacheHits, long statementCacheMisses,
+			long statementCacheEvictions) {
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.totalConnections = totalConnections;
+		this.idleConnections = idleConnections;
+		this.activeConnections = activeConnections;
+		this.waitingThreads = waitingThreads;
+		this.acquiredCount = acquiredCount;
+		this.createdCount = createdCount;
+		this.closedCount = closedCount;
+		this.timeoutCount = timeoutCount;
+		this.leakCount = leakCount;
+		this.averageWaitMicros = averageWaitMicros;
+		this.statementCacheHits = statementCacheHits;
+		this.statementCacheMisses = statementCacheMisses;
+		this.statementCacheEvictions = statementCacheEvictions;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return number of physical connections currently open, idle or borrowed
+	 */
+	public int getTotalConnections() {
+		return totalConnections;
+	}
+
+	public int getIdleConnections() {
+		return idleConnections;
+	}
+
+	/**
+	 * @return number of connections currently borrowed and not yet closed by their caller
+	 */
+	public int getActiveConnections() {
+		return activeConnections;
+	}
+
+	/**
+	 * @return approximate number of threads blocked waiting for a connection
+	 */
+	public int getWaitingThreads() {
+		return waitingThreads;
+	}
+
+	public long getAcquiredCount() {
+		return acquiredCount;
+	}
+
+	public long getCreatedCount() {
+		return createdCount;
+	}
+
+	public long getClosedCount() {
+		return closedCount;
+	}
+
+	/**
+	 * @return number of getConnection() calls that gave up after the acquire timeout
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	/**
+	 * @return number of borrowed connections reported as leaked by the housekeeper
+	 */
+	public long getLeakCount() {
+		return leakCount;
+	}
+
+	public long getAverageWaitMicros() {
+		return averageWaitMicros;
+	}
+
+	/**
+	 * @return number of prepareStatement() calls answered from a connection's statement cache
+	 */
+	public long getStatementCacheHits() {
+		return statementCacheHits;
+	}
+
+	/**
+	 * @return number of prepareStatement() calls that had to parse the SQL
+	 */
+	public long getStatementCacheMisses() {
+		return statementCacheMisses;
+	}
+
+	public long getStatementCacheEvictions() {
+		return statementCacheEvictions;
+	}
+
+	@Override
+	public String toString() {
+		return "PoolStats{" +
+				"total=" + totalConnections +
+				", idle=" + idleConnections +
+				", active=" + activeConnections +
+				", waiting=" + waitingThreads +
+				", acquired=" + acquiredCount +
+				", created=" + createdCount +
+				", closed=" + closedCount +
+				", timeouts=" + timeoutCount +
+				", leaks=" + leakCount +
+				", averageWaitMicros=" + averageWaitMicros +
+				", statementCacheHits=" + statementCacheHits +
+				", statementCacheMisses=" + statementCacheMisses +
+				", statementCacheEvictions=" + statementCacheEvictions +
+				'}';
+	}
+}
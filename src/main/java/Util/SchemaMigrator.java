@@ -0,0 +1,166 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings the database schema up to date by applying the versioned scripts in src/main/resources/db/migration.
+ *
+ * Scripts are named V{version}__{description}.sql and are applied in version order, each one exactly once. Every
+ * applied script is recorded in the schema_version table together with a SHA-256 checksum of its text. On the next
+ * run, scripts that are already recorded are skipped, and a recorded script whose text has since changed stops the
+ * migration, since editing a script that already ran would leave databases in different states. New schema changes
+ * go into a new script appended to {@link #MIGRATIONS}, never into an existing one.
+ */
+public class SchemaMigrator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SchemaMigrator.class);
+
+	private static final String MIGRATION_LOCATION = "db/migration/";
+
+	/**
+	 * Every migration script, in the order it must be applied.
+	 */
+	private static final String[] MIGRATIONS = {
+			"V1__create_account_and_message.sql",
+			"V2__index_message_posted_by_time_posted.sql",
+			"V3__index_message_time_posted.sql",
+			"V4__add_message_version.sql",
+			"V5__add_message_deleted_at.sql",
+			"V6__index_live_messages.sql",
+	};
+
+	/**
+	 * Applies every migration that has not been applied to the database yet.
+	 *
+	 * @throws IllegalStateException if a migration cannot be read or applied, or was changed after it was applied
+	 */
+	public static synchronized void migrate() {
+		try (Connection connection = ConnectionUtil.getConnection()) {
+			createVersionTable(connection);
+			Map<Integer, String> applied = findAppliedChecksums(connection);
+
+			int previousVersion = 0;
+			for (String script : MIGRATIONS) {
+				int version = parseVersion(script);
+				if (version <= previousVersion) {
+					throw new IllegalStateException("Migration " + script + " is out of order");
+				}
+				previousVersion = version;
+
+				String sql = readScript(script);
+				String checksum = checksum(sql);
+
+				if (applied.containsKey(version)) {
+					if (!applied.get(version).equals(checksum)) {
+						throw new IllegalStateException("Migration " + script
+								+ " has been modified after it was applied to this database");
+					}
+					continue;
+				}
+				apply(connection, version, script, sql, checksum);
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException("Failed to migrate the database schema", e);
+		}
+	}
+
+	private static void createVersionTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+					+ "version int primary key, "
+					+ "script varchar(255) not null, "
+					+ "checksum varchar(64) not null, "
+					+ "installed_on timestamp default current_timestamp, "
+					+ "execution_millis bigint)");
+		}
+	}
+
+	private static Map<Integer, String> findAppliedChecksums(Connection connection) throws SQLException {
+		Map<Integer, String> applied = new HashMap<>();
+		try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT version, checksum FROM schema_version");
+			 ResultSet rs = preparedStatement.executeQuery()) {
+			while (rs.next()) {
+				applied.put(rs.getInt("version"), rs.getString("checksum"));
+			}
+		}
+		return applied;
+	}
+
+	private static void apply(Connection connection, int version, String script, String sql, String checksum)
+			throws SQLException {
+		long start = System.currentTimeMillis();
+		connection.setAutoCommit(false);
+		try {
+			RunScript.execute(connection, new StringReader(sql));
+
+			try (PreparedStatement preparedStatement = connection.prepareStatement(
+					"INSERT INTO schema_version (version, script, checksum, execution_millis) VALUES (?, ?, ?, ?)")) {
+				preparedStatement.setInt(1, version);
+				preparedStatement.setString(2, script);
+				preparedStatement.setString(3, checksum);
+				preparedStatement.setLong(4, System.currentTimeMillis() - start);
+				preparedStatement.executeUpdate();
+			}
+			connection.commit();
+			LOGGER.info("Applied schema migration {}", script);
+		} catch (SQLException e) {
+			connection.rollback();
+			throw new SQLException("Migration " + script + " failed", e);
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * @return the version number of a script named V{version}__{description}.sql
+	 */
+	private static int parseVersion(String script) {
+		int separator = script.indexOf("__");
+		if (!script.startsWith("V") || separator < 2) {
+			throw new IllegalStateException("Migration " + script + " is not named V{version}__{description}.sql");
+		}
+		return Integer.parseInt(script.substring(1, separator));
+	}
+
+	private static String readScript(String script) {
+		try (InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_LOCATION + script)) {
+			if (in == null) {
+				throw new IllegalStateException("Migration " + script + " was not found on the classpath");
+			}
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read migration " + script, e);
+		}
+	}
+
+	private static String checksum(String sql) {
+		try {
+			// ignore line ending differences so a checkout on another OS does not look like an edit
+			byte[] digest = MessageDigest.getInstance("SHA-256")
+					.digest(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
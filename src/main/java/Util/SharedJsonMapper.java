@@ -0,0 +1,100 @@
+package Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.javalin.json.JsonMapper;
+
+/**
+ * The one Jackson setup of the application, registered with Javalin and shared by every handler.
+ *
+ * An ObjectReader or ObjectWriter is built once per type and reused, since they are immutable and thread-safe, so a
+ * request does not set up a new mapper, reader or writer each time. The mapper keeps Jackson's defaults, which are the
+ * same settings Javalin's own mapper used, so the JSON on the wire does not change.
+ *
+ * Like Javalin's default mapper, a String passed to {@link #toJsonString(Object, Type)} is treated as JSON that is
+ * already serialized and is written as it is.
+ */
+public class SharedJsonMapper implements JsonMapper {
+
+	private static final SharedJsonMapper INSTANCE = new SharedJsonMapper();
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+	private SharedJsonMapper() {
+	}
+
+	public static SharedJsonMapper get() {
+		return INSTANCE;
+	}
+
+	public ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+	public ObjectReader readerFor(Type type) {
+		return readers.computeIfAbsent(type, t -> objectMapper.readerFor(objectMapper.constructType(t)));
+	}
+
+	public ObjectWriter writerFor(Class<?> type) {
+		return writers.computeIfAbsent(type, objectMapper::writerFor);
+	}
+
+	public byte[] toJsonBytes(Object obj) throws JsonProcessingException {
+		return writerFor(obj.getClass()).writeValueAsBytes(obj);
+	}
+
+	@Override
+	public String toJsonString(Object obj, Type type) {
+		if (obj instanceof String) {
+			return (String) obj;
+		}
+		try {
+			return writerFor(obj.getClass()).writeValueAsString(obj);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(e.getOriginalMessage(), e);
+		}
+	}
+
+	@Override
+	public InputStream toJsonStream(Object obj, Type type) {
+		if (obj instanceof String) {
+			return new ByteArrayInputStream(((String) obj).getBytes(StandardCharsets.UTF_8));
+		}
+		try {
+			return new ByteArrayInputStream(toJsonBytes(obj));
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(e.getOriginalMessage(), e);
+		}
+	}
+
+	@Override
+	public <T> T fromJsonString(String json, Type targetType) {
+		try {
+			return readerFor(targetType).readValue(json);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(e.getOriginalMessage(), e);
+		}
+	}
+
+	@Override
+	public <T> T fromJsonStream(InputStream json, Type targetType) {
+		try {
+			return readerFor(targetType).readValue(json);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package Util;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader, and callers that ask for the same key
+ * while that load is running wait for it and share its result, instead of each running the same query.
+ *
+ * Nothing is kept once a load finishes, so a result is never older than the load it came from. A caller that arrives
+ * after a load completes starts a new one.
+ *
+ * A load that is running while its key is written may return the row as it was before the write. Writers therefore
+ * call {@link #forget(Object)} after the write and before they invalidate or patch any cache, so a caller that misses
+ * the cache after the write starts a fresh load instead of joining the old one and caching its stale result as if it
+ * had been read after the write.
+ *
+ * Shared results are handed to every waiting caller and must not be modified.
+ */
+public class SingleFlight<K, V> {
+
+	// Keys tracked for the per-key deduplication counts; further keys still coalesce but are not counted per key.
+	private static final int MAX_TRACKED_KEYS = 1000;
+
+	private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<K, LongAdder> sharedByKey = new ConcurrentHashMap<>();
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong sharedCount = new AtomicLong();
+
+	public V load(K key, CacheLoader<K, V> loader) throws SQLException {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+		if (existing != null) {
+			countShared(key);
+			return await(existing);
+		}
+
+		loadCount.incrementAndGet();
+		try {
+			V value = loader.load(key);
+			flight.complete(value);
+			return value;
+		} catch (SQLException | RuntimeException e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+
+	/**
+	 * Detaches the running load of the key, if any, so later callers start a new load. Callers already waiting for
+	 * the detached load still get its result.
+	 */
+	public void forget(K key) {
+		inFlight.remove(key);
+	}
+
+	public SingleFlightStats getStats(int topKeys) {
+		List<Map.Entry<K, LongAdder>> keys = new ArrayList<>(sharedByKey.entrySet());
+		keys.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+		Map<String, Long> top = new LinkedHashMap<>();
+		for (Map.Entry<K, LongAdder> entry : keys.subList(0, Math.min(topKeys, keys.size()))) {
+			top.put(String.valueOf(entry.getKey()), entry.getValue().sum());
+		}
+		return new SingleFlightStats(inFlight.size(), loadCount.get(), sharedCount.get(), top);
+	}
+
+	private void countShared(K key) {
+		sharedCount.incrementAndGet();
+		LongAdder counter = sharedByKey.get(key);
+		if (counter == null && sharedByKey.size() < MAX_TRACKED_KEYS) {
+			counter = sharedByKey.computeIfAbsent(key, k -> new LongAdder());
+		}
+		if (counter != null) {
+			counter.increment();
+		}
+	}
+
+	private static <V> V await(CompletableFuture<V> flight) throws SQLException {
+		try {
+			return flight.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new SQLException("Shared load failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a shared load", e);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package Util;
+
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the {@link SingleFlight} counters. Getters are provided so that Jackson can render a
+ * snapshot as JSON.
+ */
+public class SingleFlightStats {
+	private final int inFlight;
+	private final long loadCount;
+	private final long sharedCount;
+	private final Map<String, Long> topSharedKeys;
+
+	public SingleFlightStats(int inFlight, long loadCount, long sharedCount, Map<String, Long> topSharedKeys) {
+		this.inFlight = inFlight;
+		this.loadCount = loadCount;
+		this.sharedCount = sharedCount;
+		this.topSharedKeys = topSharedKeys;
+	}
+
+	/**
+	 * @return loads running right now
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return loads that actually ran
+	 */
+	public long getLoadCount() {
+		return loadCount;
+	}
+
+	/**
+	 * @return callers that got the result of a load started by another caller instead of running their own
+	 */
+	public long getSharedCount() {
+		return sharedCount;
+	}
+
+	/**
+	 * @return the keys shared most often, with how many callers shared a load of each
+	 */
+	public Map<String, Long> getTopSharedKeys() {
+		return topSharedKeys;
+	}
+
+	@Override
+	public String toString() {
+		return "SingleFlightStats{" +
+				"inFlight=" + inFlight +
+				", loads=" + loadCount +
+				", shared=" + sharedCount +
+				'}';
+	}
+}
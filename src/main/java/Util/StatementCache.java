@@ -0,0 +1,207 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An LRU cache of prepared statements belonging to one pooled connection.
+ *
+ * Statements are keyed by their SQL text and generated-keys mode. A caller gets a wrapper whose close() clears the
+ * parameters and hands the statement back to the cache, so the next prepareStatement() with the same SQL on this
+ * connection skips parsing and planning. When more than maxSize statements are cached, the least recently used one
+ * is really closed. The cache lives and dies with its physical connection. A pooled connection is only ever used by
+ * one thread at a time, so the cache itself is not synchronized.
+ */
+class StatementCache {
+
+	private final Connection physical;
+	private final Connection logical;
+	private final int maxSize;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong evictions;
+	private final LinkedHashMap<Key, CachedStatement> statements;
+
+	/**
+	 * @param physical the connection statements are prepared on
+	 * @param logical the pooled wrapper that callers see, returned from Statement.getConnection()
+	 */
+	StatementCache(Connection physical, Connection logical, int maxSize, AtomicLong hits, AtomicLong misses,
+			AtomicLong evictions) {
+		this.physical = physical;
+		this.logical = logical;
+		this.maxSize = maxSize;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedStatement> eldest) {
+				if (size() > StatementCache.this.maxSize && !eldest.getValue().inUse) {
+					StatementCache.this.evictions.incrementAndGet();
+					eldest.getValue().closePhysical();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 * @return a statement for the SQL, reused from the cache when possible
+	 */
+	PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+		Key key = new Key(sql, autoGeneratedKeys);
+		CachedStatement cached = statements.get(key);
+		if (cached != null && !cached.inUse) {
+			hits.incrementAndGet();
+			cached.inUse = true;
+			return cached.proxy;
+		}
+		misses.incrementAndGet();
+		PreparedStatement statement = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+				? physical.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+				: physical.prepareStatement(sql);
+		if (cached != null) {
+			// the cached copy is still open further up the call stack, so this one is used once and closed
+			return statement;
+		}
+		cached = new CachedStatement(statement);
+		cached.inUse = true;
+		statements.put(key, cached);
+		return cached.proxy;
+	}
+
+	/**
+	 * Marks every statement free again. Called when the connection goes back to the pool, since returning a
+	 * connection implicitly closes whatever statements the borrower left open.
+	 */
+	void releaseAll() throws SQLException {
+		for (CachedStatement cached : statements.values()) {
+			if (cached.inUse) {
+				cached.inUse = false;
+				cached.statement.clearParameters();
+				cached.statement.clearBatch();
+			}
+		}
+	}
+
+	/**
+	 * Closes every cached statement. Called when the physical connection is about to be closed.
+	 */
+	void close() {
+		Iterator<CachedStatement> iterator = statements.values().iterator();
+		while (iterator.hasNext()) {
+			iterator.next().closePhysical();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Evicts least recently used free statements while the cache is over its limit. The limit can be exceeded
+	 * briefly when the eldest entry was still in use at the time a new statement was added.
+	 */
+	private void trim() {
+		Iterator<CachedStatement> eldestFirst = statements.values().iterator();
+		while (statements.size() > maxSize && eldestFirst.hasNext()) {
+			CachedStatement cached = eldestFirst.next();
+			if (!cached.inUse) {
+				evictions.incrementAndGet();
+				cached.closePhysical();
+				eldestFirst.remove();
+			}
+		}
+	}
+
+	int size() {
+		return statements.size();
+	}
+
+	private static class Key {
+		private final String sql;
+		private final int autoGeneratedKeys;
+
+		Key(String sql, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return autoGeneratedKeys == key.autoGeneratedKeys && sql.equals(key.sql);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sql, autoGeneratedKeys);
+		}
+	}
+
+	/**
+	 * A cached statement and the wrapper handed to callers. close() on the wrapper only marks it free again.
+	 */
+	private class CachedStatement implements InvocationHandler {
+		private final PreparedStatement statement;
+		private final PreparedStatement proxy;
+		private boolean inUse;
+
+		CachedStatement(PreparedStatement statement) {
+			this.statement = statement;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (inUse) {
+						inUse = false;
+						statement.clearParameters();
+						statement.clearBatch();
+						trim();
+					}
+					return null;
+				case "isClosed":
+					return !inUse || statement.isClosed();
+				case "getConnection":
+					return logical;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "CachedStatement[" + statement + "]";
+				default:
+					try {
+						return method.invoke(statement, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+			}
+		}
+
+		void closePhysical() {
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				// the connection is going away or the statement is already gone, nothing left to release
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package Util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A Jetty thread pool that runs every task, and so every request, on a new virtual thread.
+ *
+ * This only covers the work done on the request thread itself. The message routes hand their database work to the
+ * controller's bounded database executors, which run on platform threads whether or not this pool is used, so for
+ * them a virtual thread only parses the request and suspends it. Routes that block on the request thread, i.e. account
+ * registration, login and metrics, park a virtual thread instead of holding one of a few hundred platform threads.
+ *
+ * Virtual threads need Java 21; the build targets an older release, so the executor is looked up reflectively and
+ * {@link #isAvailable()} tells whether the running JVM has them.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+	private final ExecutorService executor;
+	private final AtomicInteger activeTasks = new AtomicInteger();
+	private final AtomicInteger peakActiveTasks = new AtomicInteger();
+	private final AtomicLong startedCount = new AtomicLong();
+
+	/**
+	 * @throws IllegalStateException if the running JVM has no virtual threads, see {@link #isAvailable()}
+	 */
+	public VirtualThreadPool() {
+		this.executor = newVirtualThreadExecutor();
+	}
+
+	/**
+	 * True when the running JVM can start virtual threads.
+	 */
+	public static boolean isAvailable() {
+		try {
+			newVirtualThreadExecutor().shutdown();
+			return true;
+		} catch (IllegalStateException e) {
+			return false;
+		}
+	}
+
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalStateException("virtual threads need Java 21 or newer", e);
+		} catch (InvocationTargetException e) {
+			// Java 19 and 20 have the method but refuse it unless preview features are enabled
+			throw new IllegalStateException("virtual threads are not enabled in this JVM", e.getCause());
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		startedCount.incrementAndGet();
+		executor.execute(() -> {
+			peakActiveTasks.accumulateAndGet(activeTasks.incrementAndGet(), Math::max);
+			try {
+				task.run();
+			} finally {
+				activeTasks.decrementAndGet();
+			}
+		});
+	}
+
+	@Override
+	public void join() throws InterruptedException {
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Tasks currently running, i.e. virtual threads alive.
+	 */
+	@Override
+	public int getThreads() {
+		return activeTasks.get();
+	}
+
+	/**
+	 * Always 0, virtual threads are never kept around idle.
+	 */
+	@Override
+	public int getIdleThreads() {
+		return 0;
+	}
+
+	/**
+	 * Always false, a new virtual thread is started for every task.
+	 */
+	@Override
+	public boolean isLowOnThreads() {
+		return false;
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("mode", "virtual");
+		stats.put("activeThreads", activeTasks.get());
+		stats.put("peakActiveThreads", peakActiveTasks.get());
+		stats.put("startedCount", startedCount.get());
+		return stats;
+	}
+}
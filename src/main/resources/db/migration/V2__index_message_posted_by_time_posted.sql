@@ -0,0 +1,2 @@
+-- serves GET /accounts/{account_id}/messages (WHERE posted_by = ?) in time order without scanning the table
+create index if not exists idx_message_posted_by_time_posted on message (posted_by, time_posted_epoch);
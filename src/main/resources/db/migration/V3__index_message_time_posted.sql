@@ -0,0 +1,2 @@
+-- serves time ordered reads over every message
+create index if not exists idx_message_time_posted on message (time_posted_epoch);
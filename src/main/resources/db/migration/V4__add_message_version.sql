@@ -0,0 +1,2 @@
+-- bumped by every update, so a client can make its update conditional on the version it last read
+alter table message add column if not exists version bigint default 0 not null;
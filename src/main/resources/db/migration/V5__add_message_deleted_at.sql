@@ -0,0 +1,4 @@
+-- set when a message is soft deleted; reads skip these rows until the compactor removes them
+alter table message add column if not exists deleted_at bigint;
+-- lets the compactor find tombstones without scanning every message
+create index if not exists idx_message_deleted_at on message (deleted_at);
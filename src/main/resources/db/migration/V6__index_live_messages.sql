@@ -0,0 +1,9 @@
+-- every read filters deleted_at IS NULL, which made the planner pick the deleted_at index, which matches nearly every
+-- row, and sort; the ordered indexes now lead with the filter so pages and timelines are sorted index range reads again
+drop index if exists idx_message_deleted_at;
+drop index if exists idx_message_time_posted;
+drop index if exists idx_message_posted_by_time_posted;
+-- serves time ordered reads over every live message, and lets the compactor find tombstones (deleted_at <= ?)
+create index if not exists idx_message_live_time_posted on message (deleted_at, time_posted_epoch, message_id);
+-- serves GET /accounts/{account_id}/messages (WHERE posted_by = ? AND deleted_at IS NULL) in time order
+create index if not exists idx_message_posted_by_live_time_posted on message (posted_by, deleted_at, time_posted_epoch, message_id);
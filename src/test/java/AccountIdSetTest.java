@@ -0,0 +1,56 @@
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountIdSet;
+import Service.AccountService;
+import Util.ConnectionUtil;
+
+public class AccountIdSetTest {
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * The set grows to hold large ids, never reports ids it was not given and counts each id once.
+     */
+    @Test
+    public void bitsetGrowsAndCountsDistinctIds() {
+        AccountIdSet ids = new AccountIdSet();
+        ids.add(1);
+        ids.add(1);
+        ids.add(100_000);
+        ids.add(-5);
+
+        Assert.assertTrue(ids.contains(1));
+        Assert.assertTrue(ids.contains(100_000));
+        Assert.assertFalse(ids.contains(2));
+        Assert.assertFalse(ids.contains(99_999));
+        Assert.assertFalse(ids.contains(-5));
+        Assert.assertFalse(ids.contains(Integer.MAX_VALUE));
+        Assert.assertEquals(2, ids.size());
+    }
+
+    /**
+     * An account created behind the service's back is found through the primary key and remembered from then on.
+     */
+    @Test
+    public void missFallsBackToTheDatabase() throws SQLException {
+        AccountService accountService = new AccountService(new AccountDAO());
+        Assert.assertTrue(accountService.accountExists(1));
+        Assert.assertFalse(accountService.accountExists(2));
+
+        new AccountDAO().createNewAccount(new Account("elsewhere", "password"));
+        Assert.assertTrue(accountService.accountExists(2));
+        Assert.assertTrue(accountService.accountExists(2));
+
+        Assert.assertEquals(2L, accountService.getAccountIdStats().get("databaseLookupCount"));
+        Assert.assertEquals(2L, accountService.getAccountIdStats().get("hitCount"));
+    }
+}
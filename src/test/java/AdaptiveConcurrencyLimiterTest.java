@@ -0,0 +1,88 @@
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.AdaptiveConcurrencyLimiter;
+import Util.AdaptiveConcurrencyLimiter.Priority;
+import Util.LimiterStats;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * Requests over the limit are turned away at once, and low priority requests only get their share of it.
+     */
+    @Test
+    public void shedsOverTheLimitLowPriorityFirst() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 100, 0.5, 0.5);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire(Priority.LOW));
+        }
+        Assert.assertFalse(limiter.tryAcquire(Priority.LOW));
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire(Priority.HIGH));
+        }
+        Assert.assertFalse(limiter.tryAcquire(Priority.HIGH));
+
+        LimiterStats stats = limiter.getStats();
+        Assert.assertEquals(10, stats.getInFlight());
+        Assert.assertEquals(10, stats.getAdmittedCount());
+        Assert.assertEquals(1, stats.getLowPriorityRejectedCount());
+        Assert.assertEquals(1, stats.getHighPriorityRejectedCount());
+    }
+
+    /**
+     * A slow or dropped sample cuts the limit, but only once per target latency, and never below the minimum.
+     */
+    @Test
+    public void slowSamplesCutTheLimitOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 4, 100, 100, 0.5, 1.0);
+
+        acquireAndRelease(limiter, SLOW, false);
+        Assert.assertEquals(5, limiter.getStats().getLimit());
+
+        // within the same target latency window, further slow samples and drops do not cut again
+        acquireAndRelease(limiter, SLOW, false);
+        acquireAndRelease(limiter, FAST, true);
+        Assert.assertEquals(5, limiter.getStats().getLimit());
+
+        AdaptiveConcurrencyLimiter strict = new AdaptiveConcurrencyLimiter(5, 4, 100, 1, 0.1, 1.0);
+        acquireAndRelease(strict, SLOW, false);
+        Assert.assertEquals(4, strict.getStats().getLimit());
+    }
+
+    /**
+     * Fast samples grow the limit while it is in use, and leave an idle limit where it is.
+     */
+    @Test
+    public void fastSamplesGrowAUsedLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 100, 0.5, 1.0);
+
+        for (int i = 0; i < 100; i++) {
+            acquireAndRelease(limiter, FAST, false);
+        }
+        Assert.assertEquals(10, limiter.getStats().getLimit());
+
+        for (int round = 0; round < 20; round++) {
+            int limit = limiter.getStats().getLimit();
+            for (int i = 0; i < limit; i++) {
+                Assert.assertTrue(limiter.tryAcquire(Priority.HIGH));
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.release(FAST, false);
+            }
+        }
+        int grown = limiter.getStats().getLimit();
+        Assert.assertTrue("limit " + grown, grown > 10 && grown <= 100);
+        Assert.assertEquals(0, limiter.getStats().getInFlight());
+    }
+
+    private static void acquireAndRelease(AdaptiveConcurrencyLimiter limiter, long latencyNanos, boolean dropped) {
+        Assert.assertTrue(limiter.tryAcquire(Priority.HIGH));
+        limiter.release(latencyNanos, dropped);
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Compares inserting messages one INSERT per call (MessageDAO.CreateNewMessage) with inserting them in JDBC batches
+ * (MessageDAO.createNewMessages). This is not part of the test suite and it resets the local database; run it after
+ * `mvn test-compile` with
+ *
+ *   java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) BatchInsertBenchmark
+ */
+public class BatchInsertBenchmark {
+
+    private static final int MESSAGES = 50_000;
+    private static final int BATCH_SIZE = 500;
+
+    public static void main(String[] args) throws Exception {
+        MessageDAO messageDAO = new MessageDAO();
+
+        // warm up both paths before measuring
+        ConnectionUtil.resetTestDatabase();
+        insertOneByOne(messageDAO, 5_000);
+        insertInBatches(messageDAO, 5_000);
+
+        ConnectionUtil.resetTestDatabase();
+        long single = insertOneByOne(messageDAO, MESSAGES);
+
+        ConnectionUtil.resetTestDatabase();
+        long batched = insertInBatches(messageDAO, MESSAGES);
+
+        System.out.printf("single  : %8.0f messages/s%n", MESSAGES / (single / 1e9));
+        System.out.printf("batched : %8.0f messages/s (batches of %d)%n", MESSAGES / (batched / 1e9), BATCH_SIZE);
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    private static long insertOneByOne(MessageDAO messageDAO, int count) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            messageDAO.CreateNewMessage(new Message(1, "benchmark message " + i, 1669947793L + i));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long insertInBatches(MessageDAO messageDAO, int count) throws Exception {
+        long start = System.nanoTime();
+        List<Message> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < count; i++) {
+            batch.add(new Message(1, "benchmark message " + i, 1669947793L + i));
+            if (batch.size() == BATCH_SIZE) {
+                messageDAO.createNewMessages(batch);
+                batch.clear();
+            }
+        }
+        messageDAO.createNewMessages(batch);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import Controller.SocialMediaController;
+import Model.BatchItemResult;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BinaryFormatsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * GET /messages answers in Smile when asked, with the same messages as the JSON default.
+     */
+    @Test
+    public void listingsHonorAccept() throws IOException, InterruptedException {
+        HttpResponse<byte[]> smile = get("/messages", "application/x-jackson-smile");
+        Assert.assertEquals(200, smile.statusCode());
+        Assert.assertEquals("application/x-jackson-smile", smile.headers().firstValue("Content-Type").orElse(null));
+        List<Message> fromSmile = new SmileMapper().readValue(smile.body(), new TypeReference<List<Message>>(){});
+
+        HttpResponse<byte[]> json = get("/messages", null);
+        Assert.assertTrue(json.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+        List<Message> fromJson = new ObjectMapper().readValue(json.body(), new TypeReference<List<Message>>(){});
+
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), fromSmile);
+        Assert.assertEquals(fromJson, fromSmile);
+        Assert.assertNotEquals(smile.headers().firstValue("ETag"), json.headers().firstValue("ETag"));
+    }
+
+    /**
+     * POST /messages/batch reads a CBOR body and answers in CBOR.
+     */
+    @Test
+    public void batchReadsAndWritesCbor() throws IOException, InterruptedException {
+        CBORMapper cbor = new CBORMapper();
+        byte[] body = cbor.writeValueAsBytes(List.of(new Message(1, "sent as cbor", 1669947793L)));
+
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header("Content-Type", "application/cbor")
+                .header("Accept", "application/cbor")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<BatchItemResult> results = cbor.readValue(response.body(), new TypeReference<List<BatchItemResult>>(){});
+        Assert.assertEquals(new Message(2, 1, "sent as cbor", 1669947793L), results.get(0).getMessage());
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
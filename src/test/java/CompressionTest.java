@@ -0,0 +1,121 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A large listing is gzipped for clients that accept it, decompresses to the plain listing, and is compressed
+     * again only after the listing changes.
+     */
+    @Test
+    public void largeListingIsGzipped() throws IOException, InterruptedException {
+        postBatch(100);
+
+        HttpResponse<byte[]> plain = get("/messages", null);
+        Assert.assertFalse(plain.headers().firstValue("Content-Encoding").isPresent());
+
+        HttpResponse<byte[]> gzipped = get("/messages", "gzip, deflate");
+        Assert.assertEquals(200, gzipped.statusCode());
+        Assert.assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+        byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(gzipped.body())).readAllBytes();
+        Assert.assertTrue(gzipped.body().length < decompressed.length);
+        Assert.assertEquals(readMessages(plain.body()), readMessages(decompressed));
+        Assert.assertEquals(101, readMessages(decompressed).size());
+
+        // the second request reuses the stored body, a new message makes the next one rebuild it
+        Assert.assertArrayEquals(gzipped.body(), get("/messages", "gzip").body());
+        postBatch(1);
+        byte[] rebuilt = new GZIPInputStream(new ByteArrayInputStream(get("/messages", "gzip").body())).readAllBytes();
+        Assert.assertEquals(102, readMessages(rebuilt).size());
+
+        // the listing cache reports the two compressions and the one reuse under its own name
+        JsonNode listingStats = new ObjectMapper().readTree(get("/metrics", null).body())
+                .get("compressedListingCache").get("endpoints").get("GET /messages");
+        Assert.assertEquals(2, listingStats.get("compressedCount").asLong());
+        Assert.assertEquals(1, listingStats.get("reusedCount").asLong());
+    }
+
+    /**
+     * Responses under the size threshold are sent as they are even when the client accepts gzip.
+     */
+    @Test
+    public void smallResponsesAreNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<byte[]> listing = get("/accounts/1/messages", "gzip");
+        Assert.assertEquals(200, listing.statusCode());
+        Assert.assertFalse(listing.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertEquals(1, readMessages(listing.body()).size());
+
+        HttpResponse<byte[]> message = get("/messages/1", "gzip");
+        Assert.assertFalse(message.headers().firstValue("Content-Encoding").isPresent());
+    }
+
+    private List<Message> readMessages(byte[] body) throws IOException {
+        return objectMapper.readValue(body, new TypeReference<List<Message>>(){});
+    }
+
+    private void postBatch(int count) throws IOException, InterruptedException {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(new Message(1, "compressible message number " + i, 1669947793L + i));
+        }
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(messages)))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Polling GET /messages with the last ETag gets a 304 with no body until a message is posted.
+     */
+    @Test
+    public void unchangedListingIsNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(etag);
+
+        HttpResponse<String> unchanged = get("/messages", etag);
+        Assert.assertEquals(304, unchanged.statusCode());
+        Assert.assertEquals("", unchanged.body());
+
+        // a different page of the same listing has its own tag
+        Assert.assertEquals(200, get("/messages?limit=1", etag).statusCode());
+
+        postMessage(1);
+        HttpResponse<String> changed = get("/messages", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * An account's listing only changes its ETag when that account's messages change.
+     */
+    @Test
+    public void accountListingHasItsOwnVersion() throws IOException, InterruptedException {
+        String accountOneTag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElse(null);
+        String accountTwoTag = get("/accounts/2/messages", null).headers().firstValue("ETag").orElse(null);
+
+        postMessage(1);
+        Assert.assertEquals(200, get("/accounts/1/messages", accountOneTag).statusCode());
+        Assert.assertEquals(304, get("/accounts/2/messages", accountTwoTag).statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(int postedBy) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":" + postedBy +
+                        ",\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,138 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.PoolStats;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool over a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 0, 2, 200, 60000, 60000, 2);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * A connection that is closed goes back to the pool and is reused by the next caller.
+     */
+    @Test
+    public void closedConnectionIsReused() throws SQLException {
+        Connection first = pool.getConnection();
+        first.close();
+        Connection second = pool.getConnection();
+        second.close();
+
+        PoolStats stats = pool.getStats();
+        Assert.assertEquals(1, stats.getCreatedCount());
+        Assert.assertEquals(2, stats.getAcquiredCount());
+        Assert.assertEquals(1, stats.getIdleConnections());
+        Assert.assertEquals(0, stats.getActiveConnections());
+    }
+
+    /**
+     * When every connection is borrowed, the next caller fails after the acquire timeout instead of opening more.
+     */
+    @Test
+    public void acquireTimesOutWhenPoolIsExhausted() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail("expected the third connection to time out");
+        } catch (SQLException e) {
+            Assert.assertEquals(1, pool.getStats().getTimeoutCount());
+        } finally {
+            first.close();
+            second.close();
+        }
+        Assert.assertEquals(2, pool.getStats().getTotalConnections());
+    }
+
+    /**
+     * When the application pool is exhausted, a DAO call fails with the acquire timeout as an SQLException, which the
+     * handlers answer as a database error.
+     */
+    @Test
+    public void daoReportsAcquireTimeout() throws SQLException {
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            while (borrowed.size() < Integer.getInteger("db.pool.maxSize", 10)) {
+                borrowed.add(ConnectionUtil.getConnection());
+            }
+            new MessageDAO().getVersionedMessageById(1);
+            Assert.fail("expected the lookup to time out waiting for a connection");
+        } catch (SQLTransientConnectionException e) {
+            // the pool's acquire timeout, not a NullPointerException from a missing connection
+        } finally {
+            for (Connection connection : borrowed) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Preparing the same SQL again on a returned connection reuses the cached statement, and the least recently
+     * used statement is evicted once the cache is full.
+     */
+    @Test
+    public void preparedStatementsAreCachedPerConnection() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement statement = connection.prepareStatement("SELECT ?")) {
+                statement.setInt(1, i);
+                try (ResultSet rs = statement.executeQuery()) {
+                    Assert.assertTrue(rs.next());
+                    Assert.assertEquals(i, rs.getInt(1));
+                }
+            }
+        }
+        Assert.assertEquals(1, pool.getStats().getStatementCacheMisses());
+        Assert.assertEquals(2, pool.getStats().getStatementCacheHits());
+
+        try (Connection connection = pool.getConnection()) {
+            connection.prepareStatement("SELECT 1").close();
+            connection.prepareStatement("SELECT 2").close();
+        }
+        Assert.assertEquals(1, pool.getStats().getStatementCacheEvictions());
+    }
+
+    /**
+     * A returned connection can no longer be used through the old handle.
+     */
+    @Test
+    public void returnedConnectionCannotBeUsed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        try {
+            connection.prepareStatement("SELECT 1");
+            Assert.fail("expected the returned connection to reject new statements");
+        } catch (SQLException expected) {
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Service.DatabaseExecutor;
+import Service.DatabaseExecutorStats;
+
+public class DatabaseExecutorTest {
+
+    /**
+     * Once the threads are busy and the queue is full, further work is rejected at once and counted.
+     */
+    @Test
+    public void fullQueueRejectsWork() throws Exception {
+        DatabaseExecutor scans = new DatabaseExecutor("scans", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<Integer> running = scans.submit(() -> {
+                release.await();
+                return 1;
+            });
+            CompletableFuture<Integer> queued = scans.submit(() -> 2);
+            CompletableFuture<Integer> rejected = scans.submit(() -> 3);
+
+            Assert.assertTrue(rejected.isCompletedExceptionally());
+            try {
+                rejected.get();
+                Assert.fail("expected the third task to be rejected");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+
+            DatabaseExecutorStats stats = scans.getStats();
+            Assert.assertEquals(1, stats.getQueueDepth());
+            Assert.assertEquals(1, stats.getRejectedCount());
+
+            release.countDown();
+            Assert.assertEquals(1, (int) running.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(2, (int) queued.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            scans.shutdown();
+        }
+    }
+
+    /**
+     * A saturated pool does not hold up work submitted to another pool.
+     */
+    @Test
+    public void poolsAreIsolated() throws Exception {
+        DatabaseExecutor scans = new DatabaseExecutor("scans", 1, 10);
+        DatabaseExecutor pointReads = new DatabaseExecutor("pointReads", 1, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            scans.submit(() -> release.await(5, TimeUnit.SECONDS));
+            scans.submit(() -> release.await(5, TimeUnit.SECONDS));
+
+            Assert.assertEquals("found", pointReads.submit(() -> "found").get(1, TimeUnit.SECONDS));
+            Assert.assertEquals(1, pointReads.getStats().getRunTime().getCount());
+        } finally {
+            release.countDown();
+            scans.shutdown();
+            pointReads.shutdown();
+        }
+    }
+
+    /**
+     * Checked exceptions thrown by the work fail the future with that exception as the cause.
+     */
+    @Test
+    public void failuresReachTheFuture() throws Exception {
+        DatabaseExecutor writes = new DatabaseExecutor("writes", 1, 10);
+        try {
+            writes.submit(() -> {
+                throw new SQLException("table is locked");
+            }).get(5, TimeUnit.SECONDS);
+            Assert.fail("expected the SQLException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLException);
+        } finally {
+            writes.shutdown();
+        }
+    }
+}
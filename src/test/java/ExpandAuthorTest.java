@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import Model.AuthoredMessage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ExpandAuthorTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * With expand=author, listings carry each poster's username and never a password, in full and paginated form.
+     */
+    @Test
+    public void listingsCarryTheAuthorsUsername() throws IOException, InterruptedException {
+        Assert.assertEquals(200, post("/register", "{\"username\":\"seconduser\",\"password\":\"password2\"}").statusCode());
+        Assert.assertEquals(200, post("/messages", "{\"posted_by\":2,\"message_text\":\"second user post\",\"time_posted_epoch\":1669947800}").statusCode());
+
+        HttpResponse<String> response = get("/messages?expand=author");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.body().contains("password"));
+        List<AuthoredMessage> messages = objectMapper.readValue(response.body(), new TypeReference<List<AuthoredMessage>>(){});
+        Assert.assertEquals(List.of(
+                new AuthoredMessage(new Model.Message(1, 1, "test message 1", 1669947792), "testuser1"),
+                new AuthoredMessage(new Model.Message(2, 2, "second user post", 1669947800), "seconduser")), messages);
+        Assert.assertEquals(new AuthoredMessage(new Model.Message(1, 1, "test message 1", 1669947792), "testuser1").hashCode(),
+                messages.get(0).hashCode());
+
+        JsonNode page = objectMapper.readTree(get("/messages?limit=1&expand=author").body());
+        Assert.assertEquals("testuser1", page.get("items").get(0).get("posted_by_username").asText());
+
+        JsonNode timeline = objectMapper.readTree(get("/accounts/2/messages?expand=author").body());
+        Assert.assertEquals("seconduser", timeline.get(0).get("posted_by_username").asText());
+
+        // without expand the listing is unchanged
+        Assert.assertFalse(get("/messages").body().contains("posted_by_username"));
+
+        // the full listing joins account, pages and timelines load each username once and then use the cache
+        get("/accounts/2/messages?limit=5&expand=author");
+        JsonNode usernameCache = objectMapper.readTree(get("/metrics").body()).get("usernameCache");
+        Assert.assertEquals(2, usernameCache.get("missCount").asLong());
+        Assert.assertEquals(1, usernameCache.get("hitCount").asLong());
+    }
+
+    /**
+     * More account ids than fit one lookup statement are read in chunks, and only existing accounts are returned.
+     */
+    @Test
+    public void manyAuthorsAreLookedUpInChunks() throws SQLException {
+        List<Integer> accountIds = new ArrayList<>();
+        for (int i = 1; i <= 600; i++) {
+            accountIds.add(i);
+        }
+        Assert.assertEquals(Map.of(1, "testuser1"), new AccountDAO().getUsernamesByIds(accountIds));
+    }
+
+    /**
+     * Unknown expansions are refused, as is expanding a streamed listing.
+     */
+    @Test
+    public void unsupportedExpansionsAreRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?expand=password").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/messages?expand=account").statusCode());
+        Assert.assertEquals(400, get("/messages?stream=true&expand=author").statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,81 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.GroupCommitStats;
+import Service.GroupCommitWriter;
+import Util.ConnectionUtil;
+
+public class GroupCommitWriterTest {
+    MessageDAO messageDAO;
+    GroupCommitWriter writer;
+
+    /**
+     * Before every test, reset the database and start a writer that groups up to 16 messages within 20ms.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        writer = new GroupCommitWriter(messageDAO, 16, 20_000, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        writer.shutdown();
+    }
+
+    /**
+     * Messages submitted together are written in fewer transactions than messages, and every caller gets its own id.
+     */
+    @Test
+    public void concurrentMessagesShareCommits() throws Exception {
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            futures.add(writer.submit(new Message(1, "grouped message " + i, 1669947793L + i)));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < futures.size(); i++) {
+            Message created = futures.get(i).get();
+            Assert.assertEquals("grouped message " + i, created.getMessage_text());
+            ids.add(created.getMessage_id());
+        }
+        Assert.assertEquals(64, ids.size());
+        Assert.assertEquals(65, messageDAO.getAllMessages().size());
+
+        GroupCommitStats stats = writer.getStats();
+        Assert.assertEquals(64, stats.getWrittenCount());
+        Assert.assertTrue(stats.getBatchCount() < 64);
+        Assert.assertTrue(stats.getLargestBatch() <= 16);
+    }
+
+    /**
+     * A message that cannot be inserted only fails its own caller, the rest of its group is still written.
+     */
+    @Test
+    public void failedMessageOnlyFailsItsCaller() throws Exception {
+        CompletableFuture<Message> good = writer.submit(new Message(1, "good message", 1669947793L));
+        CompletableFuture<Message> bad = writer.submit(new Message(999, "no such account", 1669947794L));
+
+        Assert.assertEquals("good message", good.get().getMessage_text());
+        try {
+            bad.get();
+            Assert.fail("expected the message from a missing account to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLException);
+        }
+        Assert.assertEquals(1, writer.getStats().getFailedCount());
+    }
+}
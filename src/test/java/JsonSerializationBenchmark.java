@@ -0,0 +1,56 @@
+import java.lang.management.ManagementFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import Model.Message;
+import Util.SharedJsonMapper;
+
+/**
+ * Measures time and heap allocation per serialized message for the three ways a handler can produce a message's JSON:
+ * a new ObjectMapper per request (what updateMessageHandler used to do), the shared ObjectWriter, and reusing bytes
+ * that were serialized once. This is not part of the test suite; run it after `mvn test-compile` with
+ *
+ *   java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) JsonSerializationBenchmark
+ */
+public class JsonSerializationBenchmark {
+
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        Message message = new Message(1, 1, "a hot message that is read far more often than it is written", 1669947792L);
+        ObjectWriter sharedWriter = SharedJsonMapper.get().writerFor(Message.class);
+        byte[] cached = sharedWriter.writeValueAsBytes(message);
+
+        for (int round = 0; round < 2; round++) {
+            // the first round only warms up the JIT
+            boolean print = round == 1;
+            measure("new mapper per request", print, () -> new ObjectMapper().writeValueAsBytes(message));
+            measure("shared writer", print, () -> sharedWriter.writeValueAsBytes(message));
+            measure("pre-serialized bytes", print, () -> cached);
+        }
+    }
+
+    private interface Serializer {
+        byte[] serialize() throws Exception;
+    }
+
+    private static void measure(String name, boolean print, Serializer serializer) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytes = 0;
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bytes += serializer.serialize().length;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        if (print) {
+            System.out.printf("%-24s %8.2f us/op %10d B/op (%d bytes written)%n",
+                    name, elapsed / 1e3 / ITERATIONS, allocated / ITERATIONS, bytes);
+        }
+    }
+}
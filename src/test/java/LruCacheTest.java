@@ -0,0 +1,117 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.CacheStats;
+import Util.LruCache;
+
+public class LruCacheTest {
+
+    /**
+     * A cached key is loaded once, and the least recently used key is evicted when the cache is full.
+     */
+    @Test
+    public void readThroughWithLruEviction() throws SQLException {
+        AtomicInteger loads = new AtomicInteger();
+        LruCache<Integer, String> cache = new LruCache<>(2, 1000);
+
+        Assert.assertEquals("1", cache.get(1, key -> { loads.incrementAndGet(); return "" + key; }));
+        Assert.assertEquals("1", cache.get(1, key -> { loads.incrementAndGet(); return "" + key; }));
+        cache.get(2, key -> { loads.incrementAndGet(); return "" + key; });
+        cache.get(1, key -> { loads.incrementAndGet(); return "" + key; });
+        cache.get(3, key -> { loads.incrementAndGet(); return "" + key; });
+
+        // 2 was the least recently used key when 3 came in
+        Assert.assertEquals(3, loads.get());
+        cache.get(2, key -> { loads.incrementAndGet(); return "" + key; });
+        Assert.assertEquals(4, loads.get());
+
+        CacheStats stats = cache.getStats();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(4, stats.getMissCount());
+        Assert.assertEquals(2, stats.getEvictionCount());
+    }
+
+    /**
+     * Misses are remembered until the negative TTL passes, and a put replaces a remembered miss at once.
+     */
+    @Test
+    public void missesAreCachedBriefly() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        LruCache<Integer, String> cache = new LruCache<>(10, 100);
+
+        Assert.assertNull(cache.get(1, key -> { loads.incrementAndGet(); return null; }));
+        Assert.assertNull(cache.get(1, key -> { loads.incrementAndGet(); return null; }));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getStats().getNegativeHitCount());
+
+        Thread.sleep(150);
+        Assert.assertNull(cache.get(1, key -> { loads.incrementAndGet(); return null; }));
+        Assert.assertEquals(2, loads.get());
+
+        cache.put(1, "created");
+        Assert.assertEquals("created", cache.get(1, key -> { loads.incrementAndGet(); return null; }));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    /**
+     * A load that overlaps an invalidation does not put the old value back into the cache.
+     */
+    @Test
+    public void invalidationDuringLoadWins() throws SQLException {
+        LruCache<Integer, String> cache = new LruCache<>(10, 1000);
+
+        Assert.assertEquals("old", cache.get(1, key -> {
+            cache.invalidate(key);
+            return "old";
+        }));
+        Assert.assertEquals("new", cache.get(1, key -> "new"));
+    }
+
+    /**
+     * Replacing only patches a cached value that is not newer, and never re-adds a key that was invalidated, e.g. by a
+     * delete that finished between an update and its cache patch.
+     */
+    @Test
+    public void replaceOnlyPatchesCachedValues() throws SQLException {
+        LruCache<Integer, Integer> cache = new LruCache<>(10, 1000);
+        cache.put(1, 2);
+
+        Assert.assertFalse(cache.replaceUnlessSuperseded(1, 1, (cached, candidate) -> cached > candidate));
+        Assert.assertTrue(cache.replaceUnlessSuperseded(1, 3, (cached, candidate) -> cached > candidate));
+        Assert.assertEquals(Integer.valueOf(3), cache.get(1, key -> { throw new AssertionError("1 should be cached"); }));
+
+        cache.invalidate(1);
+        Assert.assertFalse(cache.replaceUnlessSuperseded(1, 4, (cached, candidate) -> cached > candidate));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * A write only discards loads of its own key: a load that overlaps a write to another key is still cached.
+     */
+    @Test
+    public void writesToOtherKeysDoNotDiscardLoads() throws SQLException {
+        LruCache<Integer, String> cache = new LruCache<>(10, 1000);
+        AtomicInteger loads = new AtomicInteger();
+
+        Assert.assertEquals("one", cache.get(1, key -> {
+            loads.incrementAndGet();
+            cache.put(2, "two");
+            cache.invalidate(3);
+            return "one";
+        }));
+        Assert.assertEquals(Map.of(1, "one", 4, "four"), cache.getAll(List.of(1, 4), keys -> {
+            loads.incrementAndGet();
+            cache.invalidate(5);
+            return Map.of(4, "four");
+        }));
+        Assert.assertEquals(Map.of(1, "one", 4, "four"), cache.getAll(List.of(1, 4), keys -> {
+            throw new AssertionError("1 and 4 should be cached");
+        }));
+        Assert.assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import Model.Message;
+import Util.MediaFormat;
+
+/**
+ * Compares payload size and encode/decode time of a large message listing in JSON, Smile and CBOR, using the same
+ * MediaFormat code the controller uses. This is not part of the test suite; run it after `mvn test-compile` with
+ *
+ *   java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) MediaFormatBenchmark
+ */
+public class MediaFormatBenchmark {
+
+    private static final int MESSAGES = 10_000;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        List<Message> listing = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            listing.add(new Message(i + 1, 1 + i % 100, "benchmark message number " + i + " with some ordinary text", 1669947793L + i));
+        }
+        TypeReference<List<Message>> listType = new TypeReference<List<Message>>(){};
+
+        for (int round = 0; round < 2; round++) {
+            // the first round only warms up the JIT
+            for (MediaFormat format : MediaFormat.values()) {
+                byte[] encoded = format.write(listing);
+
+                long start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    encoded = format.write(listing);
+                }
+                long encodeNanos = (System.nanoTime() - start) / ROUNDS;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    List<Message> decoded = format.read(encoded, listType.getType());
+                    if (decoded.size() != MESSAGES) {
+                        throw new IllegalStateException("decoded " + decoded.size() + " messages");
+                    }
+                }
+                long decodeNanos = (System.nanoTime() - start) / ROUNDS;
+
+                if (round == 1) {
+                    System.out.printf("%-6s %9d bytes  encode %6.2f ms  decode %6.2f ms  (%d messages)%n",
+                            format, encoded.length, encodeNanos / 1e6, decodeNanos / 1e6, MESSAGES);
+                }
+            }
+        }
+    }
+}
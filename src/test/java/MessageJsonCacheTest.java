@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageJsonCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app with the message JSON cache enabled.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("messages.jsonCache.enabled", "true");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.jsonCache.enabled");
+    }
+
+    /**
+     * Cached JSON is served for repeated reads and the same JSON is used inside account listings.
+     */
+    @Test
+    public void repeatedReadsReuseSerializedJson() throws IOException, InterruptedException {
+        Message expected = new Message(1, 1, "test message 1", 1669947792);
+
+        HttpResponse<String> first = get("/messages/1");
+        HttpResponse<String> second = get("/messages/1");
+        Assert.assertEquals(200, second.statusCode());
+        Assert.assertEquals("application/json", second.headers().firstValue("Content-Type").orElse(null));
+        Assert.assertEquals(first.body(), second.body());
+        Assert.assertEquals(expected, objectMapper.readValue(second.body(), Message.class));
+
+        List<Message> timeline = objectMapper.readValue(get("/accounts/1/messages").body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(expected), timeline);
+
+        JsonNode stats = objectMapper.readTree(get("/metrics").body()).get("messageJsonCache");
+        Assert.assertEquals(2, stats.get("hitCount").asInt());
+        Assert.assertEquals(1, stats.get("missCount").asInt());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MultiGetMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * GET /messages?ids= returns the existing messages in the order asked for, without missing or repeated ids.
+     */
+    @Test
+    public void getByIdsKeepsRequestOrder() throws IOException, InterruptedException {
+        postBatch(4);
+        // one of the ids is cached before the lookup, the others are read together
+        get("/messages/3");
+
+        HttpResponse<String> response = get("/messages?ids=4,99,1,3,4");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(4, 1, 3), ids(messages));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messages.get(1));
+    }
+
+    /**
+     * POST /messages/lookup takes the ids as a JSON array, and refuses more ids than one call may ask for.
+     */
+    @Test
+    public void lookupTakesAnArrayAndCapsIt() throws IOException, InterruptedException {
+        postBatch(2);
+
+        HttpResponse<String> response = post("/messages/lookup", "[3, 2]");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(List.of(3, 2), ids(objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})));
+
+        List<Integer> tooMany = new ArrayList<>();
+        for (int i = 1; i <= 101; i++) {
+            tooMany.add(i);
+        }
+        Assert.assertEquals(400, post("/messages/lookup", objectMapper.writeValueAsString(tooMany)).statusCode());
+        Assert.assertEquals(400, post("/messages/lookup", "{\"ids\": [1]}").statusCode());
+        Assert.assertEquals(400, get("/messages?ids=1,two").statusCode());
+    }
+
+    private static List<Integer> ids(List<Message> messages) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private void postBatch(int count) throws IOException, InterruptedException {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(new Message(1, "message number " + i, 1669947793L + i));
+        }
+        Assert.assertEquals(200, post("/messages/batch", objectMapper.writeValueAsString(messages)).statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
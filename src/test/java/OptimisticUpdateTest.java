@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class OptimisticUpdateTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A PATCH is written to the database and shows up in the single message and in the account's listing, and each
+     * update moves the message's ETag on.
+     */
+    @Test
+    public void updateIsPersistedAndVersioned() throws IOException, InterruptedException {
+        HttpResponse<String> before = get("/messages/1");
+        Assert.assertEquals("\"0\"", before.headers().firstValue("ETag").orElse(null));
+        // the account listing is cached before the update, so it has to be patched
+        get("/accounts/1/messages");
+
+        HttpResponse<String> updated = patch("/messages/1", "first edit", null);
+        Assert.assertEquals(200, updated.statusCode());
+        Assert.assertEquals("\"1\"", updated.headers().firstValue("ETag").orElse(null));
+
+        Message expected = new Message(1, 1, "first edit", 1669947792);
+        Assert.assertEquals(expected, objectMapper.readValue(get("/messages/1").body(), Message.class));
+        Assert.assertEquals(List.of(expected), objectMapper.readValue(get("/accounts/1/messages").body(),
+                new TypeReference<List<Message>>(){}));
+
+        // a restarted server reads the updated row from the database
+        app.stop();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        HttpResponse<String> reloaded = get("/messages/1");
+        Assert.assertEquals(expected, objectMapper.readValue(reloaded.body(), Message.class));
+        Assert.assertEquals("\"1\"", reloaded.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * An If-Match update based on an old version is refused with 409 and the current message, and leaves it unchanged.
+     */
+    @Test
+    public void staleIfMatchConflicts() throws IOException, InterruptedException {
+        String etag = get("/messages/1").headers().firstValue("ETag").orElse(null);
+
+        HttpResponse<String> first = patch("/messages/1", "first writer", etag);
+        Assert.assertEquals(200, first.statusCode());
+
+        HttpResponse<String> second = patch("/messages/1", "second writer", etag);
+        Assert.assertEquals(409, second.statusCode());
+        Assert.assertEquals(first.headers().firstValue("ETag"), second.headers().firstValue("ETag"));
+        Assert.assertEquals(new Message(1, 1, "first writer", 1669947792), objectMapper.readValue(second.body(), Message.class));
+
+        // retrying against the current version succeeds
+        HttpResponse<String> retried = patch("/messages/1", "second writer", second.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(200, retried.statusCode());
+        Assert.assertEquals("second writer", objectMapper.readValue(get("/messages/1").body(), Message.class).getMessage_text());
+    }
+
+    /**
+     * A conditional update of a message that does not exist is a 400 like any other update of a missing message, and an
+     * unreadable If-Match header is a 400 too.
+     */
+    @Test
+    public void missingMessageAndBadIfMatch() throws IOException, InterruptedException {
+        Assert.assertEquals(400, patch("/messages/2", "no such message", "\"0\"").statusCode());
+        Assert.assertEquals(400, patch("/messages/1", "bad header", "W/\"abc\"").statusCode());
+        Assert.assertEquals(200, patch("/messages/1", "any version", "*").statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> patch(String path, String text, String ifMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"" + text + "\"}"))
+                .header("Content-Type", "application/json");
+        if (ifMatch != null) {
+            request.header("If-Match", ifMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add four more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        insertMessage("test message 2", 1669947793);
+        insertMessage("test message 3", 1669947793);
+        insertMessage("test message 4", 1669947794);
+        insertMessage("test message 5", 1669947791);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Following next_cursor from GET localhost:8080/messages?limit=2 walks every message in time order exactly once.
+     *
+     * Expected Response:
+     *  Status Code: 200 for every page
+     *  Response Body: pages of at most 2 messages, the last one without a next_cursor
+     */
+    @Test
+    public void pagesCoverAllMessagesInTimeOrder() throws IOException, InterruptedException {
+        List<Integer> seenIds = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String uri = "http://localhost:8080/messages?limit=2" + (cursor == null ? "" : "&cursor=" + cursor);
+            HttpResponse<String> response = webClient.send(HttpRequest.newBuilder().uri(URI.create(uri)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+
+            MessagePage page = objectMapper.readValue(response.body(), MessagePage.class);
+            Assert.assertTrue(page.getItems().size() <= 2);
+            for (Message message : page.getItems()) {
+                seenIds.add(message.getMessage_id());
+            }
+            cursor = page.getNext_cursor();
+            pages++;
+        } while (cursor != null);
+
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(List.of(5, 1, 2, 3, 4), seenIds);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=10 returns a single page.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: all five messages of the account and no next_cursor
+     */
+    @Test
+    public void accountMessagesFitOnOnePage() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=10"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        MessagePage page = objectMapper.readValue(response.body(), MessagePage.class);
+        Assert.assertEquals(5, page.getItems().size());
+        Assert.assertNull(page.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with an invalid limit or cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidLimitOrCursorIsRejected() throws IOException, InterruptedException {
+        HttpResponse<String> badLimit = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=0")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> badCursor = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?cursor=not-a-cursor")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, badLimit.statusCode());
+        Assert.assertEquals(400, badCursor.statusCode());
+    }
+
+    private void insertMessage(String text, long timePostedEpoch) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                     "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            ps.setString(1, text);
+            ps.setLong(2, timePostedEpoch);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Service.DatabaseExecutor;
+import Service.PasswordHasher;
+import Util.ConnectionUtil;
+
+public class PasswordHashingTest {
+    AccountDAO accountDAO;
+    AccountService accountService;
+    DatabaseExecutor inserts;
+
+    /**
+     * Before every test, reset the database and create an AccountService with a cheap work factor.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountDAO = new AccountDAO();
+        accountService = new AccountService(accountDAO, new PasswordHasher(1000, 2, 16));
+        inserts = new DatabaseExecutor("inserts", 1, 10);
+    }
+
+    @After
+    public void tearDown() {
+        accountService.shutdown();
+        inserts.shutdown();
+    }
+
+    /**
+     * A registered password is stored as a salted hash, and only the right password logs in.
+     */
+    @Test
+    public void registeredPasswordsAreStoredHashed() throws Exception {
+        Account created = accountService.createNewAccount(new Account("user", "password"), inserts).get();
+        Assert.assertEquals(new Account(2, "user", "password"), created);
+        // the insert ran on the database executor, not on the hashing pool
+        Assert.assertEquals(1, inserts.getStats().getRunTime().getCount());
+
+        String stored = accountDAO.findByUsername("user").getPassword();
+        Assert.assertTrue(PasswordHasher.isHashed(stored));
+        Assert.assertFalse(stored.contains("password"));
+
+        Assert.assertEquals(created, accountService.authenticateUser(new Account("user", "password")).get());
+        Assert.assertNull(accountService.authenticateUser(new Account("user", "wrong password")).get());
+        Assert.assertNull(accountService.authenticateUser(new Account("nobody", "password")).get());
+    }
+
+    /**
+     * A plaintext password from before hashing still logs in, and is replaced by a hash on that login.
+     */
+    @Test
+    public void legacyPlaintextPasswordIsRehashedOnLogin() throws Exception {
+        Assert.assertFalse(PasswordHasher.isHashed(accountDAO.findByUsername("testuser1").getPassword()));
+
+        Account loggedIn = accountService.authenticateUser(new Account("testuser1", "password")).get();
+        Assert.assertEquals(new Account(1, "testuser1", "password"), loggedIn);
+        Assert.assertTrue(PasswordHasher.isHashed(accountDAO.findByUsername("testuser1").getPassword()));
+
+        Assert.assertEquals(loggedIn, accountService.authenticateUser(new Account("testuser1", "password")).get());
+    }
+
+    /**
+     * Once the hashing queue is full, further work is rejected right away instead of waiting.
+     */
+    @Test
+    public void saturatedHasherRejectsWork() throws Exception {
+        PasswordHasher hasher = new PasswordHasher(200_000, 1, 1);
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(hasher.hash("password" + i));
+            }
+
+            int rejected = 0;
+            for (CompletableFuture<String> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    rejected++;
+                }
+            }
+            Assert.assertTrue(rejected > 0);
+            Assert.assertEquals(rejected, hasher.getStats().getRejectedCount());
+        } finally {
+            hasher.shutdown();
+        }
+    }
+}
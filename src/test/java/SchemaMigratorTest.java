@@ -0,0 +1,106 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class SchemaMigratorTest {
+
+    /**
+     * Before every test, reset the database, which re-applies every migration.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Every migration is recorded once, and running the migrator again changes nothing.
+     */
+    @Test
+    public void migrationsAreRecordedOnce() throws SQLException {
+        int applied = count("SELECT COUNT(*) FROM schema_version");
+        Assert.assertTrue(applied >= 3);
+
+        SchemaMigrator.migrate();
+
+        Assert.assertEquals(applied, count("SELECT COUNT(*) FROM schema_version"));
+    }
+
+    /**
+     * The message indexes exist after the reset, the ones they replaced are gone, and the seeded data is still there.
+     */
+    @Test
+    public void messageIndexesExist() throws SQLException {
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES "
+                + "WHERE INDEX_NAME = 'IDX_MESSAGE_POSTED_BY_LIVE_TIME_POSTED'"));
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES "
+                + "WHERE INDEX_NAME = 'IDX_MESSAGE_LIVE_TIME_POSTED'"));
+        Assert.assertEquals(0, count("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES "
+                + "WHERE INDEX_NAME IN ('IDX_MESSAGE_DELETED_AT', 'IDX_MESSAGE_TIME_POSTED', 'IDX_MESSAGE_POSTED_BY_TIME_POSTED')"));
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM message"));
+    }
+
+    /**
+     * With a realistic table and fresh statistics, the page, timeline and stream queries of MessageDAO read their
+     * index in order, with no sort, and the compactor's purge uses the same index to find tombstones.
+     */
+    @Test
+    public void messageReadsUseSortedIndexRanges() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO account (username, password) SELECT 'planuser' || x, 'password' FROM SYSTEM_RANGE(1, 100)");
+            statement.execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "SELECT MOD(x, 100) + 1, 'message', 1669947800 + x FROM SYSTEM_RANGE(1, 20000)");
+            statement.execute("ANALYZE");
+        }
+
+        String live = "IDX_MESSAGE_LIVE_TIME_POSTED";
+        String byAccount = "IDX_MESSAGE_POSTED_BY_LIVE_TIME_POSTED";
+        // the queries as MessageDAO sends them, with literals in place of the parameters
+        assertSortedIndexRead(live, "SELECT * FROM message WHERE deleted_at IS NULL "
+                + "ORDER BY deleted_at, time_posted_epoch, message_id LIMIT 50");
+        assertSortedIndexRead(live, "SELECT * FROM message WHERE deleted_at IS NULL AND time_posted_epoch >= 1669950000 "
+                + "AND (time_posted_epoch > 1669950000 OR message_id > 2200) ORDER BY deleted_at, time_posted_epoch, message_id LIMIT 50");
+        assertSortedIndexRead(live, "SELECT * FROM message WHERE deleted_at IS NULL ORDER BY deleted_at, time_posted_epoch, message_id");
+        assertSortedIndexRead(byAccount, "SELECT * FROM message WHERE posted_by = 7 AND deleted_at IS NULL "
+                + "ORDER BY posted_by, deleted_at, time_posted_epoch, message_id");
+        assertSortedIndexRead(byAccount, "SELECT * FROM message WHERE posted_by = 7 AND deleted_at IS NULL "
+                + "ORDER BY posted_by, deleted_at, time_posted_epoch, message_id LIMIT 50");
+        assertSortedIndexRead(byAccount, "SELECT * FROM message WHERE posted_by = 7 AND deleted_at IS NULL AND time_posted_epoch >= 1669950000 "
+                + "AND (time_posted_epoch > 1669950000 OR message_id > 2200) ORDER BY posted_by, deleted_at, time_posted_epoch, message_id LIMIT 50");
+
+        Assert.assertTrue(explain("DELETE FROM message WHERE deleted_at <= 1 FETCH FIRST 100 ROWS ONLY").contains(live));
+    }
+
+    private void assertSortedIndexRead(String index, String sql) throws SQLException {
+        String plan = explain(sql);
+        Assert.assertTrue(plan, plan.contains("/* PUBLIC." + index + ":"));
+        Assert.assertTrue(plan, plan.contains("/* index sorted */"));
+    }
+
+    private String explain(String sql) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("EXPLAIN " + sql)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
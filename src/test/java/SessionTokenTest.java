@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Service.SessionStore;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Logging in returns a session token, which lets the user post as themselves but not as anyone else, and an
+     * unknown token is refused.
+     */
+    @Test
+    public void loginIssuesATokenForTheMessageEndpoints() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> loginResponse = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, loginResponse.statusCode());
+        String token = loginResponse.headers().firstValue(SocialMediaController.SESSION_HEADER).orElse(null);
+        Assert.assertNotNull(token);
+
+        Assert.assertEquals(200, postMessage(token, 1).statusCode());
+        Assert.assertEquals(401, postMessage(token, 2).statusCode());
+        Assert.assertEquals(401, postMessage("not-a-token", 1).statusCode());
+    }
+
+    /**
+     * Logging out ends the session, so its token is refused afterwards, and a logout without a token is a client error.
+     */
+    @Test
+    public void logoutEndsTheSession() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        String token = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString())
+                .headers().firstValue(SocialMediaController.SESSION_HEADER).orElse(null);
+        Assert.assertEquals(200, postMessage(token, 1).statusCode());
+
+        Assert.assertEquals(204, logout(token).statusCode());
+        Assert.assertEquals(401, postMessage(token, 1).statusCode());
+        // a second logout of the same token is harmless
+        Assert.assertEquals(204, logout(token).statusCode());
+
+        HttpRequest noTokenRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/logout"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        Assert.assertEquals(400, webClient.send(noTokenRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * Sessions expire after their TTL, and the oldest session is evicted once the store is full.
+     */
+    @Test
+    public void sessionsExpireAndAreEvicted() throws InterruptedException {
+        SessionStore sessions = new SessionStore(200, 2);
+        String first = sessions.create(new Account(1, "first", "password"));
+        String second = sessions.create(new Account(2, "second", "password"));
+        Assert.assertEquals(1, sessions.lookup(first).getAccount_id());
+        Assert.assertNull(sessions.lookup(first).getPassword());
+
+        String third = sessions.create(new Account(3, "third", "password"));
+        Assert.assertNull(sessions.lookup(first));
+        Assert.assertEquals(2, sessions.lookup(second).getAccount_id());
+        Assert.assertEquals(1, sessions.getStats().getEvictedCount());
+
+        Thread.sleep(300);
+        Assert.assertNull(sessions.lookup(third));
+        Assert.assertEquals(1, sessions.getStats().getExpiredCount());
+    }
+
+    private HttpResponse<String> logout(String token) throws IOException, InterruptedException {
+        HttpRequest logoutRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/logout"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header(SocialMediaController.SESSION_HEADER, token)
+                .build();
+        return webClient.send(logoutRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> postMessage(String token, int postedBy) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":" + postedBy +
+                        ",\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .header(SocialMediaController.SESSION_HEADER, token)
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}
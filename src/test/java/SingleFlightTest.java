@@ -0,0 +1,110 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.SingleFlight;
+import Util.SingleFlightStats;
+
+public class SingleFlightTest {
+    ExecutorService callers;
+
+    @Before
+    public void setUp() {
+        callers = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    /**
+     * Callers that ask for a key while it is loading share that load and its result.
+     */
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<Integer, String> flights = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(callers.submit(() -> flights.load(7, key -> {
+                loads.incrementAndGet();
+                awaitQuietly(release);
+                return "message " + key;
+            })));
+        }
+        // give every caller time to join the running load before letting it finish
+        while (flights.getStats(10).getSharedCount() < 7) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            Assert.assertEquals("message 7", result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, loads.get());
+
+        SingleFlightStats stats = flights.getStats(10);
+        Assert.assertEquals(1, stats.getLoadCount());
+        Assert.assertEquals(7, stats.getSharedCount());
+        Assert.assertEquals(Long.valueOf(7), stats.getTopSharedKeys().get("7"));
+        Assert.assertEquals(0, stats.getInFlight());
+
+        // the result is not kept once the load is done
+        Assert.assertEquals("message 7", flights.load(7, key -> { loads.incrementAndGet(); return "message " + key; }));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    /**
+     * A failed load fails every caller that shared it.
+     */
+    @Test
+    public void failureIsSharedToo() throws Exception {
+        SingleFlight<Integer, String> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = callers.submit(() -> flights.load(1, key -> {
+            awaitQuietly(release);
+            throw new SQLException("database down");
+        }));
+        while (flights.getStats(10).getInFlight() == 0) {
+            Thread.sleep(5);
+        }
+        Future<String> follower = callers.submit(() -> flights.load(1, key -> "not used"));
+        while (flights.getStats(10).getSharedCount() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for (Future<String> result : List.of(leader, follower)) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                Assert.fail("expected the shared load to fail");
+            } catch (ExecutionException e) {
+                Assert.assertEquals("database down", e.getCause().getMessage());
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
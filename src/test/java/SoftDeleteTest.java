@@ -0,0 +1,91 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class SoftDeleteTest {
+    AccountService accountService;
+    MessageService messageService;
+    MessageDAO messageDAO;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        accountService = new AccountService(new AccountDAO());
+        messageService = new MessageService(messageDAO, accountService);
+    }
+
+    @After
+    public void tearDown() {
+        messageService.shutdown();
+        accountService.shutdown();
+    }
+
+    /**
+     * A hard delete returns the removed row once, and nothing for a message that is already gone.
+     */
+    @Test
+    public void deleteReturnsTheRemovedRow() throws SQLException {
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messageDAO.deleteMessageById(1));
+        Assert.assertNull(messageDAO.deleteMessageById(1));
+        Assert.assertEquals(0, countRows());
+    }
+
+    /**
+     * Soft deleted messages disappear from every read at once, and the compactor purges their rows in batches.
+     */
+    @Test
+    public void softDeletedMessagesArePurgedInBatches() throws Exception {
+        messageService.enableSoftDelete(50, 2, 0, 100);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(new Message(1, "to be deleted " + i, 1669947793L + i));
+        }
+        List<Message> created = messageDAO.createNewMessages(messages);
+
+        for (Message message : created) {
+            Assert.assertEquals(message, messageService.deleteMessageById(message.getMessage_id()));
+            Assert.assertNull(messageService.getVersionedMessageById(message.getMessage_id()));
+            // a second delete of a tombstone finds nothing
+            Assert.assertNull(messageService.deleteMessageById(message.getMessage_id()));
+        }
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), messageService.getAllMessages());
+        Assert.assertEquals(1, messageService.getAllMessagesUnderGivenAccount(1).size());
+        Assert.assertEquals(1, messageService.getMessagesPage(null, 10).getItems().size());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (countRows() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, countRows());
+
+        Map<String, Object> stats = messageService.getTombstoneCompactorStats();
+        Assert.assertEquals(5L, stats.get("purgedCount"));
+        Assert.assertTrue((Long) stats.get("batchCount") >= 3);
+    }
+
+    private static int countRows() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM message")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
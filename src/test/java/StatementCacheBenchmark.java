@@ -0,0 +1,78 @@
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.tools.RunScript;
+
+import Util.ConnectionPool;
+
+/**
+ * Compares the per-call cost of the MessageDAO getVersionedMessageById and CreateNewMessage queries with and without the
+ * per-connection prepared statement cache. This is not part of the test suite; run it after `mvn test-compile` with
+ *
+ *   java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) StatementCacheBenchmark
+ */
+public class StatementCacheBenchmark {
+
+    private static final String SELECT_BY_ID = "SELECT * FROM message WHERE message_id = ?";
+    private static final String INSERT = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?,?,?)";
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        for (int cacheSize : new int[] { 0, 32 }) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:statement-cache-benchmark-" + cacheSize + ";DB_CLOSE_DELAY=-1");
+            dataSource.setUser("sa");
+            dataSource.setPassword("sa");
+            ConnectionPool pool = new ConnectionPool(dataSource, 1, 1, 5000, 600000, 600000, cacheSize);
+            try (Connection connection = pool.getConnection()) {
+                RunScript.execute(connection, new FileReader("src/main/resources/SocialMedia.sql"));
+            }
+
+            runSelects(pool, WARMUP);
+            long selectNanos = runSelects(pool, ITERATIONS);
+            runInserts(pool, WARMUP);
+            long insertNanos = runInserts(pool, ITERATIONS);
+
+            System.out.printf("statementCacheSize=%-3d getVersionedMessageById %6d ns/op   CreateNewMessage %6d ns/op   %s%n",
+                    cacheSize, selectNanos / ITERATIONS, insertNanos / ITERATIONS, pool.getStats());
+            pool.shutdown();
+        }
+    }
+
+    private static long runSelects(ConnectionPool pool, int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID)) {
+                preparedStatement.setInt(1, 1);
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    rs.next();
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runInserts(ConnectionPool pool, int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                preparedStatement.setInt(1, 1);
+                preparedStatement.setString(2, "benchmark message");
+                preparedStatement.setLong(3, 1669947792L + i);
+                preparedStatement.executeUpdate();
+                try (ResultSet keys = preparedStatement.getGeneratedKeys()) {
+                    keys.next();
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamAllMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.stream.maxMillis");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true with 1000 messages in the db
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON array of every message, in time order
+     */
+    @Test
+    public void streamEveryMessage() throws IOException, InterruptedException, SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                     "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            for (int i = 0; i < 999; i++) {
+                ps.setString(1, "streamed message " + i);
+                ps.setLong(2, 1669947793L + i);
+                ps.executeUpdate();
+            }
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1000, messages.size());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messages.get(0));
+        Assert.assertEquals("streamed message 998", messages.get(999).getMessage_text());
+        Assert.assertEquals(0, ConnectionUtil.getPoolStats().getActiveConnections());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true with no messages in the db
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of an empty list
+     */
+    @Test
+    public void streamNoMessages() throws IOException, InterruptedException, SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement("delete from message")) {
+            ps.executeUpdate();
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("[]", response.body());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true to an app that allows streams no time at all
+     *
+     * Expected Response:
+     *  The connection is aborted instead of completing the JSON array, and the connection goes back to the pool
+     */
+    @Test
+    public void streamPastItsDeadlineIsAborted() throws InterruptedException {
+        app.stop();
+        System.setProperty("messages.stream.maxMillis", "0");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                .build();
+        Assert.assertThrows(IOException.class,
+                () -> webClient.send(request, HttpResponse.BodyHandlers.ofString()));
+        Assert.assertEquals(0, ConnectionUtil.getPoolStats().getActiveConnections());
+    }
+}
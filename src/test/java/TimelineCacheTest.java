@@ -0,0 +1,170 @@
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Service.TimelineCache;
+import Service.TimelineCacheStats;
+import Util.ConnectionUtil;
+
+public class TimelineCacheTest {
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and create a MessageService with empty caches.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageService = new MessageService(new MessageDAO(), new AccountService(new AccountDAO()));
+    }
+
+    /**
+     * A cached timeline takes new and deleted messages in order without being loaded again, and matches the database.
+     */
+    @Test
+    public void timelineIsPatchedByWrites() throws Exception {
+        Assert.assertEquals(1, messageService.getAllMessagesUnderGivenAccount(1).size());
+
+        Message later = messageService.createNewMessage(new Message(1, "later", 1669947799L), null);
+        Message earlier = messageService.createNewMessage(new Message(1, "earlier", 1669947790L), null);
+        Assert.assertEquals(Arrays.asList(earlier, new Message(1, 1, "test message 1", 1669947792L), later),
+                messageService.getAllMessagesUnderGivenAccount(1));
+
+        messageService.deleteMessageById(1);
+        List<Message> timeline = messageService.getAllMessagesUnderGivenAccount(1);
+        Assert.assertEquals(Arrays.asList(earlier, later), timeline);
+        Assert.assertEquals(new MessageDAO().getAllMessagesByAccount(1), timeline);
+
+        TimelineCacheStats stats = messageService.getTimelineCacheStats();
+        Assert.assertEquals(1, stats.getMissCount());
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(3, stats.getPatchCount());
+    }
+
+    /**
+     * Once the budget is exceeded, the least recently read timeline is evicted.
+     */
+    @Test
+    public void coldTimelinesAreEvictedUnderTheBudget() throws Exception {
+        TimelineCache cache = new TimelineCache(1000);
+        List<Message> fourMessages = Arrays.asList(
+                new Message(1, 1, "a", 1L), new Message(2, 1, "b", 2L), new Message(3, 1, "c", 3L), new Message(4, 1, "d", 4L));
+
+        cache.get(1, id -> fourMessages);
+        cache.get(2, id -> fourMessages);
+        cache.get(1, id -> fourMessages);
+        cache.get(3, id -> fourMessages);
+
+        TimelineCacheStats stats = cache.getStats();
+        Assert.assertEquals(1, stats.getEvictionCount());
+        Assert.assertTrue(stats.getEstimatedBytes() <= 1000);
+        // account 1 was read more recently than account 2, so it is still cached
+        cache.get(1, id -> { throw new AssertionError("account 1 should still be cached"); });
+    }
+
+    /**
+     * An update the message cache cannot confirm as the newest version, here because the message is not cached, drops
+     * the poster's timeline instead of patching it, and the next read loads the updated text.
+     */
+    @Test
+    public void unconfirmedUpdateDropsTheTimeline() throws Exception {
+        Assert.assertEquals("test message 1", messageService.getAllMessagesUnderGivenAccount(1).get(0).getMessage_text());
+
+        Assert.assertNotNull(messageService.updateMessageContent(1, new Message(1, "updated", 0L), null));
+        Assert.assertEquals("updated", messageService.getAllMessagesUnderGivenAccount(1).get(0).getMessage_text());
+        Assert.assertEquals(2, messageService.getTimelineCacheStats().getMissCount());
+
+        // once the message is cached, the next update is patched into the timeline in place
+        messageService.getVersionedMessageById(1);
+        Assert.assertNotNull(messageService.updateMessageContent(1, new Message(1, "updated again", 0L), null));
+        Assert.assertEquals("updated again", messageService.getAllMessagesUnderGivenAccount(1).get(0).getMessage_text());
+        Assert.assertEquals(2, messageService.getTimelineCacheStats().getMissCount());
+    }
+
+    /**
+     * Posts by other accounts while a timeline loads do not keep it from being cached.
+     */
+    @Test
+    public void writesToOtherAccountsDoNotDiscardLoads() throws Exception {
+        TimelineCache cache = new TimelineCache(100000);
+        List<Message> timeline = Arrays.asList(new Message(1, 1, "a", 1L));
+
+        cache.get(1, id -> {
+            cache.added(new Message(2, 2, "b", 2L));
+            cache.invalidate(3);
+            return timeline;
+        });
+        Assert.assertEquals(timeline, cache.get(1, id -> { throw new AssertionError("account 1 should be cached"); }));
+
+        // a post by the same account does discard it
+        cache.get(2, id -> {
+            cache.added(new Message(3, 2, "c", 3L));
+            return timeline;
+        });
+        Assert.assertEquals(2, cache.getStats().getMissCount());
+        Assert.assertNotNull(cache.get(2, id -> timeline));
+        Assert.assertEquals(3, cache.getStats().getMissCount());
+    }
+
+    /**
+     * A reader that misses the cache after a post must not share a timeline load that started before the post, or the
+     * stale timeline would be cached and stay there until the account's next write.
+     */
+    @Test
+    public void loadStartedBeforeAPostIsNotShared() throws Exception {
+        CountDownLatch firstLoadRead = new CountDownLatch(1);
+        CountDownLatch releaseFirstLoad = new CountDownLatch(1);
+        MessageDAO slowFirstLoad = new MessageDAO() {
+            @Override
+            public List<Message> getAllMessagesByAccount(int account_id) throws SQLException {
+                List<Message> messages = super.getAllMessagesByAccount(account_id);
+                if (firstLoadRead.getCount() > 0) {
+                    firstLoadRead.countDown();
+                    try {
+                        releaseFirstLoad.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return messages;
+            }
+        };
+        MessageService service = new MessageService(slowFirstLoad, new AccountService(new AccountDAO()));
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Message>> beforePost = readers.submit(() -> service.getAllMessagesUnderGivenAccount(1));
+            Assert.assertTrue(firstLoadRead.await(5, TimeUnit.SECONDS));
+
+            Message posted = service.createNewMessage(new Message(1, "posted during the load", 1669947799L), null);
+            Future<List<Message>> afterPost = readers.submit(() -> service.getAllMessagesUnderGivenAccount(1));
+            try {
+                afterPost.get(2, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                // it joined the stale load, which the asserts below report
+            }
+            releaseFirstLoad.countDown();
+
+            Assert.assertEquals(1, beforePost.get(5, TimeUnit.SECONDS).size());
+            Assert.assertTrue(afterPost.get(5, TimeUnit.SECONDS).contains(posted));
+            Assert.assertTrue(service.getAllMessagesUnderGivenAccount(1).contains(posted));
+        } finally {
+            releaseFirstLoad.countDown();
+            readers.shutdown();
+        }
+    }
+}
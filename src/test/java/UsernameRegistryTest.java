@@ -0,0 +1,62 @@
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Service.DatabaseExecutor;
+import Util.ConnectionUtil;
+
+public class UsernameRegistryTest {
+    AccountService accountService;
+    DatabaseExecutor inserts;
+
+    /**
+     * Before every test, reset the database and create an AccountService with the username registry warmed up.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        accountService = new AccountService(new AccountDAO());
+        accountService.enableUsernameRegistry();
+        inserts = new DatabaseExecutor("inserts", 1, 10);
+    }
+
+    @After
+    public void tearDown() {
+        accountService.shutdown();
+        inserts.shutdown();
+    }
+
+    /**
+     * The registry knows the seeded username after warm-up and every username registered afterwards.
+     */
+    @Test
+    public void duplicateUsernamesAreRejectedFromMemory() throws SQLException, ExecutionException, InterruptedException {
+        Assert.assertEquals(1, accountService.getUsernameRegistry().size());
+        Assert.assertNull(accountService.createNewAccount(new Account("testuser1", "password"), inserts).get());
+
+        Account created = accountService.createNewAccount(new Account("user", "password"), inserts).get();
+        Assert.assertEquals(new Account(2, "user", "password"), created);
+        Assert.assertNull(accountService.createNewAccount(new Account("user", "password"), inserts).get());
+
+        Assert.assertEquals(2, accountService.getUsernameRegistry().getRejectedCount());
+        Assert.assertEquals(2, new AccountDAO().getAllAccountIds().size());
+    }
+
+    /**
+     * A username taken in the database but unknown to the registry is still rejected by the unique constraint.
+     */
+    @Test
+    public void databaseConstraintCatchesUnknownDuplicates() throws SQLException, ExecutionException, InterruptedException {
+        new AccountDAO().createNewAccount(new Account("elsewhere", "password"));
+
+        Assert.assertNull(accountService.createNewAccount(new Account("elsewhere", "password"), inserts).get());
+        Assert.assertEquals(2, new AccountDAO().getAllAccountIds().size());
+    }
+}
@@ -0,0 +1,100 @@
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.LatencyRecorder;
+import Util.LatencyRecorder.LatencySnapshot;
+import io.javalin.Javalin;
+
+/**
+ * Load test for the two request execution modes. It keeps a fixed number of requests in flight against paginated
+ * account listings, which always go to the database, and reports throughput, latency and the peak number of JVM
+ * threads. Run it once per mode after `mvn test-compile`, with a small connection pool so requests wait on it:
+ *
+ *   java -Dserver.virtualThreads=false -Ddb.pool.maxSize=10 -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) VirtualThreadLoadBenchmark
+ *   java -Dserver.virtualThreads=true  -Ddb.pool.maxSize=10 -cp ... VirtualThreadLoadBenchmark
+ *
+ * The virtual thread run needs Java 21 or newer; on older JVMs the server falls back to platform threads and says so.
+ * In-flight requests and the total can be changed with -Dbenchmark.concurrency and -Dbenchmark.requests.
+ */
+public class VirtualThreadLoadBenchmark {
+
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 1000);
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 50_000);
+    private static final int ACCOUNTS = 100;
+
+    public static void main(String[] args) throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(8)).build();
+        try {
+            for (int account = 2; account <= ACCOUNTS; account++) {
+                post(client, "/register", "{\"username\":\"user" + account + "\",\"password\":\"password\"}");
+            }
+
+            run(client, REQUESTS / 10, false);
+            run(client, REQUESTS, true);
+
+            HttpResponse<String> metrics = client.send(request("/metrics").build(), HttpResponse.BodyHandlers.ofString());
+            System.out.println(metrics.body());
+        } finally {
+            app.stop();
+        }
+        System.exit(0);
+    }
+
+    // The first, shorter run only warms up the JIT, the caches and the connection pool.
+    private static void run(HttpClient client, int requests, boolean print) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        CountDownLatch done = new CountDownLatch(requests);
+        LatencyRecorder latency = new LatencyRecorder();
+        AtomicLong failures = new AtomicLong();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            int account = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+            long sent = System.nanoTime();
+            client.sendAsync(request("/accounts/" + account + "/messages?limit=20").build(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latency.recordSince(sent);
+                        if (error != null || response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        inFlight.release();
+                        done.countDown();
+                    });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        if (print) {
+            LatencySnapshot snapshot = latency.snapshot();
+            // the mode actually used is under requestThreads in the metrics printed at the end
+            System.out.printf("server.virtualThreads=%s in-flight=%d requests=%d failures=%d%n",
+                    Boolean.getBoolean("server.virtualThreads"), CONCURRENCY, requests, failures.get());
+            System.out.printf("throughput %.0f req/s, latency mean %d us p50 %d us p99 %d us max %d us, peak JVM threads %d%n",
+                    requests / (elapsed / 1e9), snapshot.getMeanMicros(), snapshot.getP50Micros(), snapshot.getP99Micros(),
+                    snapshot.getMaxMicros(), ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        }
+    }
+
+    private static void post(HttpClient client, String path, String body) throws Exception {
+        client.send(request(path).POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+    }
+}